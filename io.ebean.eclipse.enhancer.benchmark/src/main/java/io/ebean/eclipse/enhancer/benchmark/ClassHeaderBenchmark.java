@@ -0,0 +1,64 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.ebean.eclipse.internal.enhancer.engine.ClassHeader;
+
+/**
+ * The cost of parsing the constant pool of a class, done for every changed
+ * class file before deciding whether to run the transformers.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ClassHeaderBenchmark
+{
+    @Param({ "ENTITY", "EMBEDDABLE", "QUERY_BEAN_CALLER", "IRRELEVANT" })
+    public String kind;
+
+    private Samples samples;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        final Corpus corpus = Corpus.generate(Corpus.DEFAULT_SIZE);
+        samples = new Samples(corpus.getEntries(Corpus.Kind.valueOf(kind)));
+        corpus.delete();
+    }
+
+    /**
+     * Read the name of the class, as the builder does to name the class to the
+     * transformers.
+     */
+    @Benchmark
+    public String className()
+    {
+        return ClassHeader.read(samples.next()).getClassName();
+    }
+
+    /**
+     * Read the classes referenced, recorded for classes enhanced again when
+     * they change.
+     */
+    @Benchmark
+    public List<String> referencedClasses()
+    {
+        return ClassHeader.read(samples.next()).getReferencedClasses();
+    }
+}
@@ -0,0 +1,286 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+import io.ebean.eclipse.internal.enhancer.engine.ClassEntry;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceOptions;
+import io.ebean.enhance.asm.AnnotationVisitor;
+import io.ebean.enhance.asm.ClassWriter;
+import io.ebean.enhance.asm.FieldVisitor;
+import io.ebean.enhance.asm.MethodVisitor;
+import io.ebean.enhance.asm.Opcodes;
+
+/**
+ * A generated set of compiled classes resembling a project output folder.
+ * <p>
+ * The classes are written with the ASM copy shipped in the ebean agent, so no
+ * compiler or ebean runtime is needed. They are also written to a temporary
+ * directory to serve as the classpath of the transformers.
+ */
+final class Corpus implements Opcodes
+{
+    /**
+     * The number of classes used when not given.
+     */
+    static final int DEFAULT_SIZE = 2000;
+
+    static final String DOMAIN_PACKAGE = "bench.domain";
+
+    static final String SERVICE_PACKAGE = "bench.service";
+
+    private static final String QUERY_BEAN = "bench/domain/query/QCustomer";
+
+    /**
+     * The kinds of classes, in the proportions of {@link #MIX}.
+     */
+    enum Kind
+    {
+        ENTITY, EMBEDDABLE, QUERY_BEAN_CALLER, IRRELEVANT
+    }
+
+    /**
+     * One in twenty classes is an embeddable, most are left alone.
+     */
+    private static final Kind[] MIX = {
+            Kind.ENTITY, Kind.IRRELEVANT, Kind.QUERY_BEAN_CALLER, Kind.IRRELEVANT, Kind.IRRELEVANT,
+            Kind.ENTITY, Kind.IRRELEVANT, Kind.IRRELEVANT, Kind.QUERY_BEAN_CALLER, Kind.IRRELEVANT,
+            Kind.ENTITY, Kind.IRRELEVANT, Kind.EMBEDDABLE, Kind.IRRELEVANT, Kind.IRRELEVANT,
+            Kind.ENTITY, Kind.IRRELEVANT, Kind.QUERY_BEAN_CALLER, Kind.IRRELEVANT, Kind.IRRELEVANT };
+
+    private final List<ClassEntry> entries;
+
+    private final Map<Kind, List<ClassEntry>> byKind;
+
+    private final Path directory;
+
+    private Corpus(final List<ClassEntry> entries, final Map<Kind, List<ClassEntry>> byKind, final Path directory)
+    {
+        this.entries = entries;
+        this.byKind = byKind;
+        this.directory = directory;
+    }
+
+    /**
+     * Generate a corpus of the given number of classes.
+     */
+    static Corpus generate(final int size) throws IOException
+    {
+        final List<ClassEntry> entries = new ArrayList<>(size);
+        final Map<Kind, List<ClassEntry>> byKind = new EnumMap<>(Kind.class);
+        for (final Kind kind : Kind.values()) {
+            byKind.put(kind, new ArrayList<ClassEntry>());
+        }
+
+        final Path directory = Files.createTempDirectory("ebean-enhance-corpus");
+        for (int i = 0; i < size; i++) {
+            final Kind kind = MIX[i % MIX.length];
+            final ClassEntry entry = generate(kind, i);
+            entries.add(entry);
+            byKind.get(kind).add(entry);
+
+            final Path file = directory.resolve(entry.getName());
+            Files.createDirectories(file.getParent());
+            Files.write(file, entry.getBytes());
+        }
+        return new Corpus(Collections.unmodifiableList(entries), byKind, directory);
+    }
+
+    /**
+     * The options matching the packages of the generated classes.
+     */
+    static EnhanceOptions options()
+    {
+        return new EnhanceOptions(0, new TreeSet<>(Arrays.asList(DOMAIN_PACKAGE)), new TreeSet<>(Arrays.asList(DOMAIN_PACKAGE)),
+                new TreeSet<>(Arrays.asList(SERVICE_PACKAGE)));
+    }
+
+    List<ClassEntry> getEntries()
+    {
+        return entries;
+    }
+
+    List<ClassEntry> getEntries(final Kind kind)
+    {
+        return byKind.get(kind);
+    }
+
+    /**
+     * The classpath of the transformers, the corpus directory.
+     */
+    URL[] getClasspath() throws IOException
+    {
+        return new URL[] { directory.toUri().toURL() };
+    }
+
+    /**
+     * Delete the corpus directory.
+     */
+    void delete() throws IOException
+    {
+        Files.walkFileTree(directory, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs) throws IOException
+            {
+                Files.delete(file);
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult postVisitDirectory(final Path dir, final IOException e) throws IOException
+            {
+                Files.delete(dir);
+                return FileVisitResult.CONTINUE;
+            }
+        });
+    }
+
+    private static ClassEntry generate(final Kind kind, final int i)
+    {
+        switch (kind)
+        {
+        case ENTITY:
+            return entity("bench/domain/Customer" + i);
+        case EMBEDDABLE:
+            return embeddable("bench/domain/Address" + i);
+        case QUERY_BEAN_CALLER:
+            return queryBeanCaller("bench/service/CustomerFinder" + i);
+        default:
+            return irrelevant("bench/util/Helper" + i);
+        }
+    }
+
+    private static ClassEntry entity(final String name)
+    {
+        final ClassWriter cw = start(name);
+        annotate(cw, "Ljavax/persistence/Entity;");
+        property(cw, name, "id", "Ljava/lang/Long;", "Ljavax/persistence/Id;");
+        property(cw, name, "name", "Ljava/lang/String;", null);
+        property(cw, name, "email", "Ljava/lang/String;", null);
+        property(cw, name, "version", "J", "Ljavax/persistence/Version;");
+        return finish(name, cw);
+    }
+
+    private static ClassEntry embeddable(final String name)
+    {
+        final ClassWriter cw = start(name);
+        annotate(cw, "Ljavax/persistence/Embeddable;");
+        property(cw, name, "line1", "Ljava/lang/String;", null);
+        property(cw, name, "city", "Ljava/lang/String;", null);
+        return finish(name, cw);
+    }
+
+    /**
+     * A class reading a property of a query bean, which the query bean
+     * transformer replaces by a call of its accessor.
+     */
+    private static ClassEntry queryBeanCaller(final String name)
+    {
+        final ClassWriter cw = start(name);
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "nameProperty", "()Ljava/lang/Object;", null, null);
+        mv.visitCode();
+        mv.visitTypeInsn(NEW, QUERY_BEAN);
+        mv.visitInsn(DUP);
+        mv.visitMethodInsn(INVOKESPECIAL, QUERY_BEAN, "<init>", "()V", false);
+        mv.visitFieldInsn(GETFIELD, QUERY_BEAN, "name", "Ljava/lang/Object;");
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return finish(name, cw);
+    }
+
+    private static ClassEntry irrelevant(final String name)
+    {
+        final ClassWriter cw = start(name);
+        for (int m = 0; m < 4; m++) {
+            final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "join" + m, "(Ljava/lang/String;I)Ljava/lang/String;", null,
+                    null);
+            mv.visitCode();
+            mv.visitTypeInsn(NEW, "java/lang/StringBuilder");
+            mv.visitInsn(DUP);
+            mv.visitVarInsn(ALOAD, 0);
+            mv.visitMethodInsn(INVOKESPECIAL, "java/lang/StringBuilder", "<init>", "(Ljava/lang/String;)V", false);
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "append", "(I)Ljava/lang/StringBuilder;", false);
+            mv.visitMethodInsn(INVOKEVIRTUAL, "java/lang/StringBuilder", "toString", "()Ljava/lang/String;", false);
+            mv.visitInsn(ARETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+        return finish(name, cw);
+    }
+
+    private static ClassWriter start(final String name)
+    {
+        final ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        cw.visit(V1_7, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", null);
+        cw.visitSource(name.substring(name.lastIndexOf('/') + 1) + ".java", null);
+
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitMethodInsn(INVOKESPECIAL, "java/lang/Object", "<init>", "()V", false);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+        return cw;
+    }
+
+    private static void annotate(final ClassWriter cw, final String descriptor)
+    {
+        final AnnotationVisitor av = cw.visitAnnotation(descriptor, true);
+        av.visitEnd();
+    }
+
+    /**
+     * Add a field with a getter and a setter.
+     */
+    private static void property(final ClassWriter cw, final String owner, final String field, final String descriptor,
+            final String annotation)
+    {
+        final FieldVisitor fv = cw.visitField(ACC_PRIVATE, field, descriptor, null, null);
+        if (annotation != null) {
+            fv.visitAnnotation(annotation, true).visitEnd();
+        }
+        fv.visitEnd();
+
+        final boolean wide = "J".equals(descriptor);
+        final String suffix = Character.toUpperCase(field.charAt(0)) + field.substring(1);
+
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "get" + suffix, "()" + descriptor, null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, owner, field, descriptor);
+        mv.visitInsn(wide ? LRETURN : ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        mv = cw.visitMethod(ACC_PUBLIC, "set" + suffix, "(" + descriptor + ")V", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitVarInsn(wide ? LLOAD : ALOAD, 1);
+        mv.visitFieldInsn(PUTFIELD, owner, field, descriptor);
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static ClassEntry finish(final String name, final ClassWriter cw)
+    {
+        cw.visitEnd();
+        return new ClassEntry(name + ".class", cw.toByteArray());
+    }
+}
@@ -0,0 +1,38 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.net.URL;
+
+import io.ebean.eclipse.internal.enhancer.engine.CachingClassBytesReader;
+import io.ebean.eclipse.internal.enhancer.engine.ClassMetaCache;
+import io.ebean.enhance.agent.ClassBytesReader;
+import io.ebean.enhance.agent.ClassPathClassBytesReader;
+
+/**
+ * The readers of class metadata compared by the benchmarks: the agent's own,
+ * opening a classloader per lookup, and the plugin's cached one.
+ */
+final class Readers
+{
+    static final String AGENT = "agent";
+
+    static final String CACHED = "cached";
+
+    private Readers()
+    {
+    }
+
+    /**
+     * Create the named reader, a cached one sharing the given cache as builds
+     * of the plugin do.
+     */
+    static ClassBytesReader create(final String reader, final URL[] classpath, final ClassLoader loader, final ClassMetaCache cache)
+    {
+        if (AGENT.equals(reader)) {
+            return new ClassPathClassBytesReader(classpath);
+        }
+        if (CACHED.equals(reader)) {
+            return new CachingClassBytesReader(loader, cache);
+        }
+        throw new IllegalArgumentException("Unknown reader " + reader);
+    }
+}
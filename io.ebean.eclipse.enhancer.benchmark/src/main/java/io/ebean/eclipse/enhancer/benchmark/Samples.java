@@ -0,0 +1,49 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.util.List;
+
+import io.ebean.eclipse.internal.enhancer.engine.ClassEntry;
+
+/**
+ * Cycles through the bytes of some classes, so a benchmark does not measure
+ * the same class over and over.
+ */
+final class Samples
+{
+    private final byte[][] classes;
+
+    private int next;
+
+    Samples(final List<ClassEntry> entries)
+    {
+        classes = new byte[entries.size()][];
+        for (int i = 0; i < classes.length; i++) {
+            classes[i] = entries.get(i).getBytes();
+        }
+    }
+
+    int size()
+    {
+        return classes.length;
+    }
+
+    /**
+     * Return the index of the next class.
+     */
+    int nextIndex()
+    {
+        final int index = next;
+        next = (next + 1 == classes.length) ? 0 : next + 1;
+        return index;
+    }
+
+    byte[] get(final int index)
+    {
+        return classes[index];
+    }
+
+    byte[] next()
+    {
+        return classes[nextIndex()];
+    }
+}
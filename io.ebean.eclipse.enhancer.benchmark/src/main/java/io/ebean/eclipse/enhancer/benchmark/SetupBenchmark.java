@@ -0,0 +1,95 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.ebean.eclipse.internal.enhancer.engine.CachingClassBytesReader;
+import io.ebean.eclipse.internal.enhancer.engine.ClassHeader;
+import io.ebean.eclipse.internal.enhancer.engine.ClassMetaCache;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+
+/**
+ * The cost of a build's first enhanced class: the transformers are created
+ * lazily by it, and without the classpath cache so is the classloader. The
+ * class metadata cache outlives both, as it does in the plugin.
+ * <p>
+ * Subtract {@link TransformBenchmark#transform()} of an entity for the setup
+ * alone.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SetupBenchmark
+{
+    private Corpus corpus;
+
+    private URL[] classpath;
+
+    private URLClassLoader cachedLoader;
+
+    private ClassMetaCache classMeta;
+
+    private byte[] entity;
+
+    private ClassHeader header;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        corpus = Corpus.generate(Corpus.DEFAULT_SIZE);
+        classpath = corpus.getClasspath();
+        cachedLoader = new URLClassLoader(classpath);
+        classMeta = new ClassMetaCache();
+        entity = corpus.getEntries(Corpus.Kind.ENTITY).get(0).getBytes();
+        header = ClassHeader.read(entity);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        cachedLoader.close();
+        corpus.delete();
+    }
+
+    /**
+     * A build with the project classloader already cached.
+     */
+    @Benchmark
+    public Outcome transformers() throws Exception
+    {
+        try (EnhanceEngine engine = new EnhanceEngine(new CachingClassBytesReader(cachedLoader, classMeta), cachedLoader,
+                Corpus.options(), Silent.INSTANCE)) {
+            return engine.transform(header, entity);
+        }
+    }
+
+    /**
+     * A build after the classpath changed, creating the classloader as well.
+     */
+    @Benchmark
+    public Outcome classLoaderAndTransformers() throws Exception
+    {
+        try (URLClassLoader loader = new URLClassLoader(classpath);
+                EnhanceEngine engine = new EnhanceEngine(new CachingClassBytesReader(loader, classMeta), loader, Corpus.options(),
+                        Silent.INSTANCE)) {
+            return engine.transform(header, entity);
+        }
+    }
+}
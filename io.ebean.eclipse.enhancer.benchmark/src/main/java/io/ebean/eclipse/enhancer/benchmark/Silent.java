@@ -0,0 +1,22 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import io.ebean.enhance.agent.MessageOutput;
+
+/**
+ * Drops the agent messages, there are none at debug level 0 unless something
+ * is wrong.
+ */
+final class Silent implements MessageOutput
+{
+    static final Silent INSTANCE = new Silent();
+
+    private Silent()
+    {
+    }
+
+    @Override
+    public void println(final String msg)
+    {
+        // dropped
+    }
+}
@@ -0,0 +1,150 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.io.IOException;
+import java.net.URLClassLoader;
+import java.util.Iterator;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.ebean.eclipse.internal.enhancer.engine.BatchEnhancer;
+import io.ebean.eclipse.internal.enhancer.engine.ClassEntry;
+import io.ebean.eclipse.internal.enhancer.engine.ClassMetaCache;
+import io.ebean.eclipse.internal.enhancer.engine.ClassSource;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+import io.ebean.eclipse.internal.enhancer.engine.ResultSink;
+
+/**
+ * Classes enhanced per second over the whole corpus, like a full build with the
+ * classloader cached.
+ * <p>
+ * One thread enhances on the benchmark thread as the builder does, more use
+ * the {@link BatchEnhancer} worker pool. The allocation reported by the gc
+ * profiler only covers the benchmark thread, so not the workers.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ThroughputBenchmark
+{
+    @Param({ "1", "2", "4" })
+    public int threads;
+
+    @Param({ Readers.AGENT, Readers.CACHED })
+    public String reader;
+
+    private Corpus corpus;
+
+    private URLClassLoader loader;
+
+    /**
+     * Kept across builds, like the persistent cache of the plugin.
+     */
+    private ClassMetaCache classMeta;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        corpus = Corpus.generate(Corpus.DEFAULT_SIZE);
+        loader = new URLClassLoader(corpus.getClasspath());
+        classMeta = new ClassMetaCache();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        loader.close();
+        corpus.delete();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(Corpus.DEFAULT_SIZE)
+    public int fullBuild() throws Exception
+    {
+        try (EnhanceEngine engine = new EnhanceEngine(Readers.create(reader, corpus.getClasspath(), loader, classMeta), loader,
+                Corpus.options(), Silent.INSTANCE)) {
+            if (threads == 1) {
+                int enhanced = 0;
+                for (final ClassEntry entry : corpus.getEntries()) {
+                    final Outcome outcome = engine.process(entry.getBytes());
+                    if (!outcome.getErrors().isEmpty()) {
+                        throw new IllegalStateException("Error enhancing " + entry, outcome.getErrors().get(0));
+                    }
+                    if (outcome.isEnhanced()) {
+                        enhanced++;
+                    }
+                }
+                return enhanced;
+            }
+
+            final BatchEnhancer batch = new BatchEnhancer(engine, threads, Silent.INSTANCE);
+            batch.run(new ListSource(corpus.getEntries().iterator()), new DiscardingSink());
+            return batch.getEnhancedCount();
+        }
+    }
+
+    private static final class ListSource implements ClassSource
+    {
+        private final Iterator<ClassEntry> entries;
+
+        private ListSource(final Iterator<ClassEntry> entries)
+        {
+            this.entries = entries;
+        }
+
+        @Override
+        public ClassEntry next()
+        {
+            return entries.hasNext() ? entries.next() : null;
+        }
+
+        @Override
+        public void close()
+        {
+            // nothing held open
+        }
+    }
+
+    private static final class DiscardingSink implements ResultSink
+    {
+        @Override
+        public void enhanced(final ClassEntry entry, final byte[] enhancedBytes)
+        {
+            // discarded
+        }
+
+        @Override
+        public void unchanged(final ClassEntry entry)
+        {
+            // discarded
+        }
+
+        @Override
+        public void failed(final ClassEntry entry, final Throwable error) throws IOException
+        {
+            throw new IOException("Error enhancing " + entry, error);
+        }
+
+        @Override
+        public void close()
+        {
+            // nothing held open
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package io.ebean.eclipse.enhancer.benchmark;
+
+import java.net.URLClassLoader;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.ebean.eclipse.internal.enhancer.engine.ClassHeader;
+import io.ebean.eclipse.internal.enhancer.engine.ClassMetaCache;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+
+/**
+ * The cost of enhancing one class once the transformers exist.
+ * <p>
+ * {@link #transform()} always runs the combined transform, for irrelevant
+ * classes that is the work the candidate filter of {@link #process()} saves.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class TransformBenchmark
+{
+    @Param({ "ENTITY", "EMBEDDABLE", "QUERY_BEAN_CALLER", "IRRELEVANT" })
+    public String kind;
+
+    @Param({ Readers.AGENT, Readers.CACHED })
+    public String reader;
+
+    private Corpus corpus;
+
+    private URLClassLoader loader;
+
+    private EnhanceEngine engine;
+
+    private Samples samples;
+
+    private ClassHeader[] headers;
+
+    @Setup
+    public void setup() throws Exception
+    {
+        corpus = Corpus.generate(Corpus.DEFAULT_SIZE);
+        loader = new URLClassLoader(corpus.getClasspath());
+        engine = new EnhanceEngine(Readers.create(reader, corpus.getClasspath(), loader, new ClassMetaCache()), loader,
+                Corpus.options(), Silent.INSTANCE);
+
+        samples = new Samples(corpus.getEntries(Corpus.Kind.valueOf(kind)));
+        headers = new ClassHeader[samples.size()];
+        for (int i = 0; i < headers.length; i++) {
+            headers[i] = ClassHeader.read(samples.get(i));
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws Exception
+    {
+        engine.close();
+        loader.close();
+        corpus.delete();
+    }
+
+    /**
+     * Run the combined transform on a parsed class.
+     */
+    @Benchmark
+    public Outcome transform() throws Exception
+    {
+        final int index = samples.nextIndex();
+        return engine.transform(headers[index], samples.get(index));
+    }
+
+    /**
+     * Parse, filter and (for candidates) transform a class, as the builder does
+     * per changed class file.
+     */
+    @Benchmark
+    public Outcome process() throws Exception
+    {
+        return engine.process(samples.next());
+    }
+}
@@ -0,0 +1,274 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.ebean.enhance.asm.ClassWriter;
+import io.ebean.enhance.asm.FieldVisitor;
+import io.ebean.enhance.asm.MethodVisitor;
+import io.ebean.enhance.asm.Opcodes;
+
+/**
+ * A class missed by the constant pool scan is never enhanced, so every marker
+ * the transformers rely on is checked here.
+ */
+public class ClassHeaderTest implements Opcodes
+{
+    @Test
+    public void plainClassHasNoMarker()
+    {
+        final ClassHeader header = ClassHeader.read(start("org/example/util/Helper", null).toByteArray());
+
+        assertFalse(header.hasAnnotationMarker());
+        assertFalse(header.hasQueryBeanMarker());
+    }
+
+    @Test
+    public void jpaAnnotationIsMarker()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.visitAnnotation("Ljavax/persistence/Entity;", true).visitEnd();
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasAnnotationMarker());
+    }
+
+    @Test
+    public void jpaAnnotationOfFieldIsMarker()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        final FieldVisitor fv = cw.visitField(ACC_PRIVATE, "id", "Ljava/lang/Long;", null, null);
+        fv.visitAnnotation("Ljavax/persistence/Id;", true).visitEnd();
+        fv.visitEnd();
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasAnnotationMarker());
+    }
+
+    @Test
+    public void ebeanAnnotationIsMarker()
+    {
+        final ClassWriter cw = start("org/example/service/CustomerService", null);
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "save", "()V", null, null);
+        mv.visitAnnotation("Lio/ebean/annotation/Transactional;", true).visitEnd();
+        mv.visitCode();
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasAnnotationMarker());
+    }
+
+    @Test
+    public void jtaTransactionalIsMarker()
+    {
+        final ClassWriter cw = start("org/example/service/CustomerService", null);
+        cw.visitAnnotation("Ljavax/transaction/Transactional;", true).visitEnd();
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasAnnotationMarker());
+    }
+
+    @Test
+    public void otherJtaAnnotationIsNoMarker()
+    {
+        final ClassWriter cw = start("org/example/service/CustomerService", null);
+        cw.visitAnnotation("Ljavax/transaction/TransactionScoped;", true).visitEnd();
+
+        assertFalse(ClassHeader.read(cw.toByteArray()).hasAnnotationMarker());
+    }
+
+    @Test
+    public void queryBeanReferenceIsMarker()
+    {
+        final ClassWriter cw = start("org/example/service/CustomerFinder", null);
+        cw.visitField(ACC_PRIVATE, "query", "Lorg/example/domain/query/QCustomer;", null, null).visitEnd();
+
+        final ClassHeader header = ClassHeader.read(cw.toByteArray());
+        assertTrue(header.hasQueryBeanMarker());
+        assertFalse(header.hasAnnotationMarker());
+    }
+
+    @Test
+    public void assocQueryBeanReferenceIsMarker()
+    {
+        final ClassWriter cw = start("org/example/service/CustomerFinder", null);
+        cw.newClass("org/example/domain/query/assoc/QAssocAddress");
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasQueryBeanMarker());
+    }
+
+    @Test
+    public void typeQueryRuntimeIsMarker()
+    {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, "org/example/domain/query/QCustomer", null, "io/ebean/typequery/TQRootBean", null);
+
+        assertTrue(ClassHeader.read(cw.toByteArray()).hasQueryBeanMarker());
+    }
+
+    @Test
+    public void queryPackageWithoutQueryBeanIsNoMarker()
+    {
+        final ClassWriter cw = start("org/example/query/Helper", null);
+        cw.newClass("org/example/query/Parser");
+
+        assertFalse(ClassHeader.read(cw.toByteArray()).hasQueryBeanMarker());
+    }
+
+    /**
+     * Long and double constants take two entries, a scan getting that wrong
+     * reads the rest of the pool from the wrong offsets.
+     */
+    @Test
+    public void markerAfterWideConstantsIsFound()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.newConst(Long.valueOf(42));
+        cw.newConst(Double.valueOf(1.5));
+        cw.newConst(Integer.valueOf(7));
+        cw.newConst("text");
+        cw.visitAnnotation("Ljavax/persistence/Entity;", true).visitEnd();
+
+        final ClassHeader header = ClassHeader.read(cw.toByteArray());
+        assertTrue(header.hasAnnotationMarker());
+    }
+
+    @Test
+    public void className()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.newConst(Long.valueOf(42));
+
+        assertEquals("org/example/domain/Customer", ClassHeader.read(cw.toByteArray()).getClassName());
+    }
+
+    @Test
+    public void nonAsciiClassName()
+    {
+        final String name = "org/example/dom\u00e4ne/Kunde\u20ac";
+
+        assertEquals(name, ClassHeader.read(start(name, null).toByteArray()).getClassName());
+    }
+
+    @Test
+    public void interfaces()
+    {
+        final String[] interfaces = { "java/io/Serializable", "org/example/service/CustomerService" };
+        final ClassHeader header = ClassHeader.read(start("org/example/service/CustomerServiceImpl", interfaces).toByteArray());
+
+        assertArrayEquals(interfaces, header.getInterfaces());
+    }
+
+    @Test
+    public void noInterfaces()
+    {
+        assertEquals(0, ClassHeader.read(start("org/example/util/Helper", null).toByteArray()).getInterfaces().length);
+    }
+
+    /**
+     * The source file attribute follows the fields and methods, whose
+     * attributes (code, annotations) have to be skipped.
+     */
+    @Test
+    public void sourceFileAfterMembers()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.visitSource("Customer.java", null);
+        cw.visitAnnotation("Ljavax/persistence/Entity;", true).visitEnd();
+        final FieldVisitor fv = cw.visitField(ACC_PRIVATE, "id", "Ljava/lang/Long;", null, null);
+        fv.visitAnnotation("Ljavax/persistence/Id;", true).visitEnd();
+        fv.visitEnd();
+        cw.visitField(ACC_PRIVATE | ACC_STATIC | ACC_FINAL, "MAX", "I", null, Integer.valueOf(10)).visitEnd();
+        final MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "getId", "()Ljava/lang/Long;", null, null);
+        mv.visitCode();
+        mv.visitVarInsn(ALOAD, 0);
+        mv.visitFieldInsn(GETFIELD, "org/example/domain/Customer", "id", "Ljava/lang/Long;");
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(1, 1);
+        mv.visitEnd();
+
+        assertEquals("Customer.java", ClassHeader.read(cw.toByteArray()).getSourceFile());
+    }
+
+    @Test
+    public void noSourceFile()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.visitAnnotation("Ljavax/persistence/Entity;", true).visitEnd();
+
+        assertNull(ClassHeader.read(cw.toByteArray()).getSourceFile());
+    }
+
+    @Test
+    public void referencedClassesLeaveOutArrays()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", new String[] { "java/io/Serializable" });
+        cw.newClass("[Lorg/example/domain/Order;");
+        cw.newClass("org/example/domain/Address");
+
+        final List<String> referenced = ClassHeader.read(cw.toByteArray()).getReferencedClasses();
+        assertTrue(referenced.containsAll(Arrays.asList("org/example/domain/Customer", "java/lang/Object", "java/io/Serializable",
+                "org/example/domain/Address")));
+        assertFalse(referenced.contains("[Lorg/example/domain/Order;"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void notAClassFileIsRejected()
+    {
+        ClassHeader.read("not a class file at all".getBytes());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void emptyBytesAreRejected()
+    {
+        ClassHeader.read(new byte[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void unknownConstantTagIsRejected()
+    {
+        final byte[] bytes = { (byte) 0xCA, (byte) 0xFE, (byte) 0xBA, (byte) 0xBE, 0, 0, 0, 52, 0, 2, 99, 0, 0, 0, 0 };
+        ClassHeader.read(bytes);
+    }
+
+    /**
+     * Whatever the cut, reading fails with an IllegalArgumentException (which
+     * the callers handle) or not at all.
+     */
+    @Test
+    public void truncatedClassFileIsRejected()
+    {
+        final ClassWriter cw = start("org/example/domain/Customer", null);
+        cw.newConst(Long.valueOf(42));
+        cw.visitAnnotation("Ljavax/persistence/Entity;", true).visitEnd();
+        final byte[] bytes = cw.toByteArray();
+
+        int rejected = 0;
+        for (int length = 0; length < bytes.length; length++) {
+            try {
+                ClassHeader.read(Arrays.copyOf(bytes, length));
+            }
+            catch (final IllegalArgumentException e) {
+                rejected++;
+            }
+            catch (final RuntimeException e) {
+                fail("Cut at " + length + " failed with " + e);
+            }
+        }
+        assertTrue(rejected > 10);
+    }
+
+    static ClassWriter start(final String name, final String[] interfaces)
+    {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_8, ACC_PUBLIC | ACC_SUPER, name, null, "java/lang/Object", interfaces);
+        return cw;
+    }
+}
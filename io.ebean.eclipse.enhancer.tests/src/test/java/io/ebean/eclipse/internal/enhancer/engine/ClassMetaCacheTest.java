@@ -0,0 +1,151 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClassMetaCacheTest
+{
+    private static final String ORIGIN = "/repo/acme-domain-1.0.jar";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void saveAndLoad() throws IOException
+    {
+        final ClassMetaCache cache = new ClassMetaCache();
+        cache.put("org/example/Customer", ORIGIN, 1000, bytes(1));
+        cache.put("org/example/Order", ORIGIN, 1000, bytes(2));
+        cache.put("org/example/Customer", "/work/classes", 2000, bytes(3));
+        assertTrue(cache.isDirty());
+
+        final File file = folder.newFile("class-meta.bin");
+        cache.save(file);
+        assertFalse(cache.isDirty());
+        assertFalse(new File(file.getPath() + ".tmp").exists());
+
+        final ClassMetaCache loaded = ClassMetaCache.load(file);
+        assertEquals(3, loaded.size());
+        assertFalse(loaded.isDirty());
+        assertArrayEquals(bytes(1), loaded.get("org/example/Customer", ORIGIN, 1000));
+        assertArrayEquals(bytes(2), loaded.get("org/example/Order", ORIGIN, 1000));
+        assertArrayEquals(bytes(3), loaded.get("org/example/Customer", "/work/classes", 2000));
+    }
+
+    @Test
+    public void changedOriginMisses()
+    {
+        final ClassMetaCache cache = new ClassMetaCache();
+        cache.put("org/example/Customer", ORIGIN, 1000, bytes(1));
+
+        assertNull(cache.get("org/example/Customer", ORIGIN, 1001));
+        assertNull(cache.get("org/example/Customer", "/repo/acme-domain-1.1.jar", 1000));
+        assertArrayEquals(bytes(1), cache.get("org/example/Customer", ORIGIN, 1000));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+    }
+
+    @Test
+    public void savedAgainReplaces() throws IOException
+    {
+        final File file = folder.newFile("class-meta.bin");
+        final ClassMetaCache first = new ClassMetaCache();
+        first.put("org/example/Customer", ORIGIN, 1000, bytes(1));
+        first.save(file);
+
+        final ClassMetaCache second = new ClassMetaCache();
+        second.put("org/example/Order", ORIGIN, 1000, bytes(2));
+        second.save(file);
+
+        final ClassMetaCache loaded = ClassMetaCache.load(file);
+        assertEquals(1, loaded.size());
+        assertArrayEquals(bytes(2), loaded.get("org/example/Order", ORIGIN, 1000));
+    }
+
+    @Test
+    public void missingFileLoadsEmpty()
+    {
+        assertEquals(0, ClassMetaCache.load(new File(folder.getRoot(), "missing.bin")).size());
+    }
+
+    @Test
+    public void otherHeaderLoadsEmpty() throws IOException
+    {
+        final File file = folder.newFile("class-meta.bin");
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(0xEBEA0C00);
+            out.writeInt(1);
+            out.writeUTF("org/example/Customer@" + ORIGIN);
+        }
+
+        assertEquals(0, ClassMetaCache.load(file).size());
+    }
+
+    @Test
+    public void notCompressedLoadsEmpty() throws IOException
+    {
+        final File file = folder.newFile("class-meta.bin");
+        Files.write(file.toPath(), "not a class meta cache".getBytes("UTF-8"));
+
+        assertEquals(0, ClassMetaCache.load(file).size());
+    }
+
+    /**
+     * A file cut short (say by a crash while writing) keeps none of the
+     * entries, not just those up to the cut.
+     */
+    @Test
+    public void truncatedFileLoadsEmpty() throws IOException
+    {
+        final ClassMetaCache cache = new ClassMetaCache();
+        for (int i = 0; i < 50; i++) {
+            cache.put("org/example/Entity" + i, ORIGIN, 1000, bytes(i));
+        }
+        final File file = folder.newFile("class-meta.bin");
+        cache.save(file);
+
+        final byte[] saved = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(saved, saved.length / 2));
+
+        assertEquals(0, ClassMetaCache.load(file).size());
+    }
+
+    @Test
+    public void negativeLengthLoadsEmpty() throws IOException
+    {
+        final File file = folder.newFile("class-meta.bin");
+        try (DataOutputStream out = new DataOutputStream(new DeflaterOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(0xEBEA0C01);
+            out.writeInt(1);
+            out.writeUTF("org/example/Customer@" + ORIGIN);
+            out.writeLong(1000);
+            out.writeInt(-1);
+        }
+
+        assertEquals(0, ClassMetaCache.load(file).size());
+    }
+
+    private static byte[] bytes(final int seed)
+    {
+        final byte[] bytes = new byte[64 + seed];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (seed * 31 + i);
+        }
+        return bytes;
+    }
+}
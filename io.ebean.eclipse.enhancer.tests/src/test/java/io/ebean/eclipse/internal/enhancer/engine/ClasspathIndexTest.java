@@ -0,0 +1,261 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ClasspathIndexTest
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void firstInClasspathOrder() throws IOException
+    {
+        final File first = jar("first.jar", "org/example/Customer.class", "first");
+        final File second = jar("second.jar", "org/example/Customer.class", "second", "org/example/Order.class", "order");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(first, second), null)) {
+            assertEquals("first", content(index.find("org/example/Customer.class")));
+            assertEquals(first.toURI().toString(), index.find("org/example/Customer.class").getOrigin());
+            assertEquals("order", content(index.find("org/example/Order.class")));
+        }
+        try (ClasspathIndex index = ClasspathIndex.open(urls(second, first), null)) {
+            assertEquals("second", content(index.find("org/example/Customer.class")));
+        }
+    }
+
+    @Test
+    public void foldersInClasspathOrder() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/Customer.class", "jar");
+        final File classes = folder.newFolder("classes");
+        write(new File(classes, "org/example/Customer.class"), "folder");
+        write(new File(classes, "org/example/Address.class"), "address");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(classes, jar), null)) {
+            assertEquals("folder", content(index.find("org/example/Customer.class")));
+            assertEquals("address", content(index.find("org/example/Address.class")));
+            assertEquals("jar", content(index.find("org/example/Customer.class", false)));
+            assertNull(index.find("org/example/Address.class", false));
+        }
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar, classes), null)) {
+            assertEquals("jar", content(index.find("org/example/Customer.class")));
+        }
+    }
+
+    /**
+     * Folders are not indexed, a class added after opening is found.
+     */
+    @Test
+    public void folderProbedOnEachLookup() throws IOException
+    {
+        final File classes = folder.newFolder("classes");
+        try (ClasspathIndex index = ClasspathIndex.open(urls(classes), null)) {
+            assertNull(index.find("org/example/Customer.class"));
+            write(new File(classes, "org/example/Customer.class"), "added");
+            assertEquals("added", content(index.find("org/example/Customer.class")));
+        }
+    }
+
+    @Test
+    public void missingResources() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/Customer.class", "customer", "root.properties", "root");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar, new File(folder.getRoot(), "missing.jar")), null)) {
+            assertNull(index.find("org/example/Order.class"));
+            assertNull(index.find("org/other/Customer.class"));
+            assertNull(index.find("Customer.class"));
+            assertEquals("root", content(index.find("root.properties")));
+            assertTrue(index.findAll("org/example/Order.class", true).isEmpty());
+        }
+    }
+
+    @Test
+    public void findAllInClasspathOrder() throws IOException
+    {
+        final File first = jar("first.jar", "META-INF/ebean-typequery.mf", "first");
+        final File classes = folder.newFolder("classes");
+        write(new File(classes, "META-INF/ebean-typequery.mf"), "folder");
+        final File second = jar("second.jar", "META-INF/ebean-typequery.mf", "second");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(first, classes, second), null)) {
+            final List<ClasspathIndex.Resource> all = index.findAll("META-INF/ebean-typequery.mf", true);
+            assertEquals(3, all.size());
+            assertEquals("first", content(all.get(0)));
+            assertEquals("folder", content(all.get(1)));
+            assertEquals("second", content(all.get(2)));
+
+            assertEquals(2, index.findAll("META-INF/ebean-typequery.mf", false).size());
+        }
+    }
+
+    @Test
+    public void resourceUrl() throws IOException
+    {
+        final File jar = jar("domain.jar", "META-INF/ebean.mf", "entity-packages: org.example");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), null)) {
+            final URL url = index.find("META-INF/ebean.mf").toUrl();
+            assertEquals("jar:" + jar.toURI() + "!/META-INF/ebean.mf", url.toString());
+            try (InputStream in = url.openStream()) {
+                assertEquals("entity-packages: org.example", read(in));
+            }
+        }
+    }
+
+    @Test
+    public void savedIndexIsReused() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/Customer.class", "customer");
+        final File directory = new File(folder.getRoot(), "index");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertFalse(index.isReused());
+            assertEquals(1, index.getJarCount());
+            assertEquals(1, index.getPackageCount());
+        }
+        assertEquals(1, indexFiles(directory).length);
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertTrue(index.isReused());
+            assertEquals(1, index.getPackageCount());
+            assertEquals("customer", content(index.find("org/example/Customer.class")));
+        }
+    }
+
+    @Test
+    public void changedJarIsScannedAgain() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/Customer.class", "customer");
+        final File directory = new File(folder.getRoot(), "index");
+        ClasspathIndex.open(urls(jar), directory).close();
+
+        jar("domain.jar", "org/example/Customer.class", "customer", "org/example/sub/Order.class", "order");
+        assertTrue(jar.setLastModified(jar.lastModified() + 2000));
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertFalse(index.isReused());
+            assertEquals("order", content(index.find("org/example/sub/Order.class")));
+        }
+        assertEquals(2, indexFiles(directory).length);
+    }
+
+    @Test
+    public void corruptIndexIsBuiltAgain() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/Customer.class", "customer");
+        final File directory = new File(folder.getRoot(), "index");
+        ClasspathIndex.open(urls(jar), directory).close();
+
+        final File file = indexFiles(directory)[0];
+        Files.write(file.toPath(), "not an index".getBytes(StandardCharsets.UTF_8));
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertFalse(index.isReused());
+            assertEquals("customer", content(index.find("org/example/Customer.class")));
+        }
+
+        // written again by the rebuild
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertTrue(index.isReused());
+        }
+    }
+
+    @Test
+    public void truncatedIndexIsBuiltAgain() throws IOException
+    {
+        final File jar = jar("domain.jar", "org/example/a/A.class", "a", "org/example/b/B.class", "b", "org/example/c/C.class", "c");
+        final File directory = new File(folder.getRoot(), "index");
+        ClasspathIndex.open(urls(jar), directory).close();
+
+        final File file = indexFiles(directory)[0];
+        final byte[] saved = Files.readAllBytes(file.toPath());
+        Files.write(file.toPath(), Arrays.copyOf(saved, saved.length / 2));
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), directory)) {
+            assertFalse(index.isReused());
+            assertNotNull(index.find("org/example/c/C.class"));
+        }
+    }
+
+    private File jar(final String name, final String... entries) throws IOException
+    {
+        final File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            for (int i = 0; i < entries.length; i += 2) {
+                out.putNextEntry(new ZipEntry(entries[i]));
+                out.write(entries[i + 1].getBytes(StandardCharsets.UTF_8));
+                out.closeEntry();
+            }
+        }
+        return file;
+    }
+
+    private static void write(final File file, final String content) throws IOException
+    {
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static URL[] urls(final File... files) throws IOException
+    {
+        final URL[] urls = new URL[files.length];
+        for (int i = 0; i < files.length; i++) {
+            urls[i] = files[i].toURI().toURL();
+        }
+        return urls;
+    }
+
+    private static File[] indexFiles(final File directory)
+    {
+        return directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(final File file)
+            {
+                return file.getName().endsWith(".idx");
+            }
+        });
+    }
+
+    private static String content(final ClasspathIndex.Resource resource) throws IOException
+    {
+        assertNotNull(resource);
+        try (InputStream in = resource.open()) {
+            return read(in);
+        }
+    }
+
+    private static String read(final InputStream in) throws IOException
+    {
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int len;
+        while ((len = in.read(buf)) > -1) {
+            out.write(buf, 0, len);
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,176 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Scanner;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.ebean.enhance.asm.ClassWriter;
+import io.ebean.enhance.asm.Opcodes;
+
+public class IndexedClassLoaderTest implements Opcodes
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void loadsClassesOfJars() throws Exception
+    {
+        final File jar = jar("domain.jar", "org/example/BaseEntity", "org/example/Customer");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), null)) {
+            final IndexedClassLoader loader = new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, true);
+            final Class<?> customer = Class.forName("org.example.Customer", false, loader);
+            assertSame(loader, customer.getClassLoader());
+            assertEquals("org.example.BaseEntity", customer.getSuperclass().getName());
+            assertEquals("org.example", customer.getPackage().getName());
+            assertSame(String.class, Class.forName("java.lang.String", false, loader));
+        }
+    }
+
+    @Test(expected = ClassNotFoundException.class)
+    public void missingClass() throws Exception
+    {
+        final File jar = jar("domain.jar", "org/example/Customer");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar), null)) {
+            Class.forName("org.example.Order", false, new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, true));
+        }
+    }
+
+    /**
+     * As set up by the builder: the jars in a cached loader, the folders in a
+     * loader per build taking the jar classes from it.
+     */
+    @Test
+    public void foldersInBuildLoader() throws Exception
+    {
+        final File jar = jar("domain.jar", "org/example/BaseEntity");
+        final File classes = folder.newFolder("classes");
+        writeClass(classes, "org/example/Customer", "org/example/BaseEntity");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(classes, jar), null)) {
+            final IndexedClassLoader jars = new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, false);
+            assertNull(jars.getResource("org/example/Customer.class"));
+
+            final IndexedClassLoader build = jars.withFolders();
+            final Class<?> customer = Class.forName("org.example.Customer", false, build);
+            assertSame(build, customer.getClassLoader());
+            assertSame(jars, customer.getSuperclass().getClassLoader());
+            assertSame(customer.getSuperclass(), Class.forName("org.example.BaseEntity", false, jars.withFolders()));
+        }
+    }
+
+    /**
+     * A workspace project also on the classpath as a jar (like a stale
+     * snapshot): the first in classpath order wins, as for a URLClassLoader.
+     */
+    @Test
+    public void classpathOrderBetweenFoldersAndJars() throws Exception
+    {
+        final File jar = jar("domain.jar", "org/example/Customer");
+        final File classes = folder.newFolder("classes");
+        writeClass(classes, "org/example/Customer", "java/lang/Object");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(classes, jar), null)) {
+            final IndexedClassLoader jars = new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, false);
+            final IndexedClassLoader build = jars.withFolders();
+            assertSame(build, Class.forName("org.example.Customer", false, build).getClassLoader());
+        }
+        try (ClasspathIndex index = ClasspathIndex.open(urls(jar, classes), null)) {
+            final IndexedClassLoader jars = new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, false);
+            assertSame(jars, Class.forName("org.example.Customer", false, jars.withFolders()).getClassLoader());
+        }
+    }
+
+    /**
+     * The query bean transformer reads the manifests of all jars.
+     */
+    @Test
+    public void allResources() throws IOException
+    {
+        final File first = folder.newFile("first.jar");
+        final File second = folder.newFile("second.jar");
+        writeJar(first, "META-INF/ebean-typequery.mf", "packages: org.first");
+        writeJar(second, "META-INF/ebean-typequery.mf", "packages: org.second");
+
+        try (ClasspathIndex index = ClasspathIndex.open(urls(first, second), null)) {
+            final IndexedClassLoader loader = new IndexedClassLoader(null, index, true);
+            final List<String> contents = new ArrayList<>();
+            for (final URL url : Collections.list(loader.getResources("META-INF/ebean-typequery.mf"))) {
+                try (InputStream in = url.openStream(); Scanner scanner = new Scanner(in, "UTF-8")) {
+                    contents.add(scanner.nextLine());
+                }
+            }
+            assertEquals(2, contents.size());
+            assertEquals("packages: org.first", contents.get(0));
+            assertEquals("packages: org.second", contents.get(1));
+            assertEquals("jar:" + first.toURI() + "!/META-INF/ebean-typequery.mf", loader.getResource("META-INF/ebean-typequery.mf").toString());
+        }
+    }
+
+    private File jar(final String name, final String... classNames) throws IOException
+    {
+        final File file = new File(folder.getRoot(), name);
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            String superName = "java/lang/Object";
+            for (final String className : classNames) {
+                out.putNextEntry(new ZipEntry(className + ".class"));
+                out.write(classBytes(className, superName));
+                out.closeEntry();
+                superName = className;
+            }
+        }
+        return file;
+    }
+
+    private static void writeJar(final File file, final String name, final String content) throws IOException
+    {
+        try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(file))) {
+            out.putNextEntry(new ZipEntry(name));
+            out.write(content.getBytes(StandardCharsets.UTF_8));
+            out.closeEntry();
+        }
+    }
+
+    private static void writeClass(final File directory, final String className, final String superName) throws IOException
+    {
+        final File file = new File(directory, className + ".class");
+        Files.createDirectories(file.getParentFile().toPath());
+        Files.write(file.toPath(), classBytes(className, superName));
+    }
+
+    private static byte[] classBytes(final String className, final String superName)
+    {
+        final ClassWriter cw = new ClassWriter(0);
+        cw.visit(V1_7, ACC_PUBLIC | ACC_SUPER, className, null, superName, null);
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    private static URL[] urls(final File... files) throws IOException
+    {
+        final URL[] urls = new URL[files.length];
+        for (int i = 0; i < files.length; i++) {
+            urls[i] = files[i].toURI().toURL();
+        }
+        return urls;
+    }
+}
@@ -0,0 +1,107 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.junit.Test;
+
+public class PackageNamesTest
+{
+    @Test
+    public void separatorsAndWildcards()
+    {
+        final Set<String> packages = new TreeSet<>();
+        PackageNames.parse("com.acme.domain.*, com.acme.service;com.acme.query.  com.acme.util\tcom.acme.api", packages);
+
+        assertEquals(set("com.acme.api", "com.acme.domain", "com.acme.query", "com.acme.service", "com.acme.util"), packages);
+    }
+
+    @Test
+    public void noneAndEmptyAddNothing()
+    {
+        final Set<String> packages = new TreeSet<>();
+        PackageNames.parse("none", packages);
+        PackageNames.parse("NONE", packages);
+        PackageNames.parse(" , ;", packages);
+        PackageNames.parse("", packages);
+        PackageNames.parse(null, packages);
+
+        assertTrue(packages.isEmpty());
+    }
+
+    @Test
+    public void parseAdds()
+    {
+        final Set<String> packages = set("com.acme.domain");
+        PackageNames.parse("com.acme.other", packages);
+
+        assertEquals(set("com.acme.domain", "com.acme.other"), packages);
+    }
+
+    @Test
+    public void overrideReplaces()
+    {
+        final Set<String> packages = set("com.acme.domain");
+        PackageNames.override("com.acme.other", packages);
+
+        assertEquals(set("com.acme.other"), packages);
+    }
+
+    @Test
+    public void overrideWithEmptyValueClears()
+    {
+        final Set<String> packages = set("com.acme.domain");
+        PackageNames.override("", packages);
+
+        assertTrue(packages.isEmpty());
+    }
+
+    @Test
+    public void overrideWithNullKeeps()
+    {
+        final Set<String> packages = set("com.acme.domain");
+        PackageNames.override(null, packages);
+
+        assertEquals(set("com.acme.domain"), packages);
+    }
+
+    /**
+     * Long lists are wrapped onto continuation lines by manifest writers.
+     */
+    @Test
+    public void ebeanManifest() throws IOException
+    {
+        final String mf = "entity-packages: com.acme.domain.customer, com.acme.domain.order, com.acme.doma\r\n"
+                + " in.product\r\n"
+                + "querybean-packages: com.acme.service.*\r\n"
+                + "transactional-packages: none\r\n"
+                + "\r\n";
+        final Attributes attributes = new Manifest(new ByteArrayInputStream(mf.getBytes(StandardCharsets.UTF_8))).getMainAttributes();
+
+        final Set<String> entity = new TreeSet<>();
+        final Set<String> queryBean = new TreeSet<>();
+        final Set<String> transactional = new TreeSet<>();
+        PackageNames.parse(attributes.getValue("entity-packages"), entity);
+        PackageNames.parse(attributes.getValue("packages"), entity);
+        PackageNames.parse(attributes.getValue("querybean-packages"), queryBean);
+        PackageNames.parse(attributes.getValue("transactional-packages"), transactional);
+
+        assertEquals(set("com.acme.domain.customer", "com.acme.domain.order", "com.acme.domain.product"), entity);
+        assertEquals(set("com.acme.service"), queryBean);
+        assertTrue(transactional.isEmpty());
+    }
+
+    private static Set<String> set(final String... values)
+    {
+        return new TreeSet<>(Arrays.asList(values));
+    }
+}
@@ -0,0 +1,141 @@
+package io.ebean.eclipse.internal.enhancer.ui;
+
+import java.text.SimpleDateFormat;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+import io.ebean.eclipse.internal.enhancer.builder.BuildStats;
+import io.ebean.eclipse.internal.enhancer.builder.BuildStatsHistory;
+
+import org.eclipse.swt.SWT;
+import org.eclipse.swt.custom.SashForm;
+import org.eclipse.swt.events.SelectionAdapter;
+import org.eclipse.swt.events.SelectionEvent;
+import org.eclipse.swt.widgets.Composite;
+import org.eclipse.swt.widgets.Display;
+import org.eclipse.swt.widgets.Table;
+import org.eclipse.swt.widgets.TableColumn;
+import org.eclipse.swt.widgets.TableItem;
+import org.eclipse.swt.widgets.Text;
+import org.eclipse.ui.part.ViewPart;
+
+/**
+ * Shows the statistics of the recent enhancement builds, and the slowest
+ * classes of the selected one.
+ */
+public class BuildStatsView extends ViewPart {
+
+  public static final String ID = "io.ebean.eclipse.enhancer.views.buildStats";
+
+  private static final String[] COLUMNS = { "Time", "Project", "Kind", "Total ms", "Visited", "Up to date", "Filtered",
+      "Transformed", "Enhanced", "Failed", "Read KB", "Written KB", "Classpath ms", "Transform ms", "Source ms", "Write ms" };
+
+  private Display display;
+
+  private Table table;
+
+  private Text details;
+
+  private final BuildStatsHistory.Listener listener = new BuildStatsHistory.Listener() {
+    @Override
+    public void historyChanged() {
+      if (!display.isDisposed()) {
+        display.asyncExec(new Runnable() {
+          @Override
+          public void run() {
+            refresh();
+          }
+        });
+      }
+    }
+  };
+
+  @Override
+  public void createPartControl(Composite parent) {
+    display = parent.getDisplay();
+    SashForm sash = new SashForm(parent, SWT.VERTICAL);
+
+    table = new Table(sash, SWT.SINGLE | SWT.FULL_SELECTION);
+    table.setHeaderVisible(true);
+    table.setLinesVisible(true);
+    for (String name : COLUMNS) {
+      TableColumn column = new TableColumn(table, SWT.LEFT);
+      column.setText(name);
+      column.pack();
+    }
+    table.addSelectionListener(new SelectionAdapter() {
+      @Override
+      public void widgetSelected(SelectionEvent e) {
+        showDetails();
+      }
+    });
+
+    details = new Text(sash, SWT.MULTI | SWT.READ_ONLY | SWT.V_SCROLL | SWT.H_SCROLL);
+    sash.setWeights(new int[] { 3, 1 });
+
+    BuildStatsHistory history = EnhancerPlugin.getBuildStats();
+    if (history != null) {
+      history.addListener(listener);
+    }
+    refresh();
+  }
+
+  @Override
+  public void setFocus() {
+    table.setFocus();
+  }
+
+  @Override
+  public void dispose() {
+    BuildStatsHistory history = EnhancerPlugin.getBuildStats();
+    if (history != null) {
+      history.removeListener(listener);
+    }
+    super.dispose();
+  }
+
+  private void refresh() {
+    if (table.isDisposed()) {
+      return;
+    }
+    BuildStatsHistory history = EnhancerPlugin.getBuildStats();
+    List<BuildStats> builds = (history == null) ? Collections.<BuildStats> emptyList() : history.getRecent();
+
+    SimpleDateFormat format = new SimpleDateFormat("HH:mm:ss");
+    table.removeAll();
+    for (BuildStats stats : builds) {
+      TableItem item = new TableItem(table, SWT.NONE);
+      item.setData(stats);
+      item.setText(new String[] { format.format(new Date(stats.getStartMillis())), stats.getProject(),
+          stats.isCanceled() ? stats.getKind() + " (canceled)" : stats.getKind(), Long.toString(stats.getDurationMillis()),
+          Integer.toString(stats.getVisited()), Integer.toString(stats.getUpToDate()), Integer.toString(stats.getFiltered()),
+          Integer.toString(stats.getTransformed()), Integer.toString(stats.getEnhanced()), Integer.toString(stats.getFailed()),
+          Long.toString(stats.getBytesRead() / 1024), Long.toString(stats.getBytesWritten() / 1024),
+          Long.toString(stats.getClasspathMillis()), Long.toString(stats.getTransformMillis()),
+          Long.toString(stats.getSourceLookupMillis()), Long.toString(stats.getWriteMillis()) });
+    }
+    for (TableColumn column : table.getColumns()) {
+      column.pack();
+    }
+    if (table.getItemCount() > 0) {
+      table.select(0);
+    }
+    showDetails();
+  }
+
+  private void showDetails() {
+    TableItem[] selection = table.getSelection();
+    if (selection.length == 0) {
+      details.setText("");
+      return;
+    }
+    BuildStats stats = (BuildStats) selection[0].getData();
+    StringBuilder sb = new StringBuilder("Slowest classes to transform:\n");
+    for (BuildStats.ClassTime time : stats.getSlowest()) {
+      sb.append(time.getMicros()).append(" us\t").append(time.getClassName()).append('\n');
+    }
+    details.setText(sb.toString());
+  }
+}
@@ -1,17 +1,21 @@
 package io.ebean.eclipse.internal.enhancer.ui.preferences;
 
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.jface.preference.BooleanFieldEditor;
 import org.eclipse.jface.preference.ComboFieldEditor;
 import org.eclipse.jface.preference.FieldEditorPreferencePage;
 import org.eclipse.swt.widgets.Composite;
 import org.eclipse.ui.IWorkbench;
 import org.eclipse.ui.IWorkbenchPreferencePage;
+import org.eclipse.ui.preferences.ScopedPreferenceStore;
 
 import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+import io.ebean.eclipse.internal.enhancer.PreferenceConstants;
 
 /**
  * This page is used to modify preferences only. They are stored in the
- * preference store that belongs to the main plug-in class. That way,
- * preferences can be accessed directly via the preference store.
+ * instance scope of the enhancer plug-in, where the plug-in reads them from
+ * without depending on this UI.
  */
 public class EnhancePreferencePage extends FieldEditorPreferencePage implements IWorkbenchPreferencePage {
 
@@ -21,12 +25,7 @@ public class EnhancePreferencePage extends FieldEditorPreferencePage implements
   public EnhancePreferencePage() {
     super(GRID);
 
-    EnhancerPlugin activator = EnhancerPlugin.getDefault();
-    if (activator == null) {
-      EnhancerPlugin.logError("Plugin not activated when creating Preference Page?", null);
-    } else {
-      setPreferenceStore(activator.getPreferenceStore());
-    }
+    setPreferenceStore(new ScopedPreferenceStore(InstanceScope.INSTANCE, EnhancerPlugin.PLUGIN_ID));
   }
 
   /**
@@ -58,6 +57,32 @@ public class EnhancePreferencePage extends FieldEditorPreferencePage implements
     addField(new LabelPairFieldEditor("Purpose:", "Logging this plugin", getFieldEditorParent()));
     addField(new LabelPairFieldEditor("Location:", "${workspace}/.metadata/.log", getFieldEditorParent()));
 
+    addField(new SpacerFieldEditor(getFieldEditorParent()));
+
+    addField(new ComboFieldEditor(PreferenceConstants.P_ENHANCE_PARALLELISM, "Full Build Threads:",
+        new String[][] { { "1 - Serial", "1" }, { "2", "2" }, { "4", "4" }, { "8", "8" }, { "16", "16" },
+            { "All Processors", "0" } },
+        getFieldEditorParent()));
+
+    addField(new LabelPairFieldEditor("Purpose:", "Enhancing classes in parallel on a full build",
+        getFieldEditorParent()));
+
+    addField(new SpacerFieldEditor(getFieldEditorParent()));
+
+    addField(new BooleanFieldEditor(PreferenceConstants.P_EXCLUDE_TEST_OUTPUT, "Skip test output folders",
+        getFieldEditorParent()));
+
+    addField(new LabelPairFieldEditor("Purpose:", "Not enhancing classes compiled from test source folders",
+        getFieldEditorParent()));
+
+    addField(new SpacerFieldEditor(getFieldEditorParent()));
+
+    addField(new BooleanFieldEditor(PreferenceConstants.P_DEFERRED_ENHANCEMENT, "Enhance in the background",
+        getFieldEditorParent()));
+
+    addField(new LabelPairFieldEditor("Purpose:", "Enhancing saved classes after the auto build,\nlaunches wait for it",
+        getFieldEditorParent()));
+
     addField(new SpacerFieldEditor(getFieldEditorParent()));
     addField(new LabelFieldEditor("Note: You can view this log via (Window - Show View - Error Log).",
         getFieldEditorParent()));
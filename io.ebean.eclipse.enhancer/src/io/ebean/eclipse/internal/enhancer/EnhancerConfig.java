@@ -0,0 +1,112 @@
+package io.ebean.eclipse.internal.enhancer;
+
+import org.eclipse.core.runtime.preferences.IPreferencesService;
+
+/**
+ * An immutable snapshot of the plugin preferences.
+ * <p>
+ * The plugin replaces its snapshot whenever a preference changes, a build takes
+ * the current one at its start and uses it throughout.
+ */
+public final class EnhancerConfig
+{
+    /**
+     * The configuration used while the plugin is not running.
+     */
+    static final EnhancerConfig DEFAULT = new EnhancerConfig(0, 0, 1, false, false);
+
+    private final int debugLevel;
+
+    private final int enhanceDebugLevel;
+
+    private final int parallelism;
+
+    private final boolean excludeTestOutput;
+
+    private final boolean deferred;
+
+    private EnhancerConfig(final int debugLevel, final int enhanceDebugLevel, final int parallelism, final boolean excludeTestOutput,
+            final boolean deferred)
+    {
+        this.debugLevel = debugLevel;
+        this.enhanceDebugLevel = enhanceDebugLevel;
+        this.parallelism = parallelism;
+        this.excludeTestOutput = excludeTestOutput;
+        this.deferred = deferred;
+    }
+
+    static EnhancerConfig read(final IPreferencesService preferences)
+    {
+        final int parallelism = getInt(preferences, PreferenceConstants.P_ENHANCE_PARALLELISM);
+        return new EnhancerConfig(
+                getInt(preferences, PreferenceConstants.P_PLUGIN_DEBUG_LEVEL),
+                getInt(preferences, PreferenceConstants.P_ENHANCE_DEBUG_LEVEL),
+                (parallelism <= 0) ? Runtime.getRuntime().availableProcessors() : parallelism,
+                getBoolean(preferences, PreferenceConstants.P_EXCLUDE_TEST_OUTPUT),
+                getBoolean(preferences, PreferenceConstants.P_DEFERRED_ENHANCEMENT));
+    }
+
+    /**
+     * Read a preference of the plugin, from the instance scope or else the
+     * defaults of the {@link PreferenceInitializer}.
+     */
+    private static int getInt(final IPreferencesService preferences, final String key)
+    {
+        return preferences.getInt(EnhancerPlugin.PLUGIN_ID, key, 0, null);
+    }
+
+    private static boolean getBoolean(final IPreferencesService preferences, final String key)
+    {
+        return preferences.getBoolean(EnhancerPlugin.PLUGIN_ID, key, false, null);
+    }
+
+    /**
+     * The debug level of this plugin's own logging.
+     */
+    public int getDebugLevel()
+    {
+        return debugLevel;
+    }
+
+    /**
+     * The debug level given to the enhancement agents.
+     */
+    public int getEnhanceDebugLevel()
+    {
+        return enhanceDebugLevel;
+    }
+
+    /**
+     * The number of threads used to enhance classes on a full build, 1 meaning
+     * serial enhancement on the builder thread.
+     */
+    public int getParallelism()
+    {
+        return parallelism;
+    }
+
+    /**
+     * True if classes in the output folders of test source folders are left
+     * alone.
+     */
+    public boolean isExcludeTestOutput()
+    {
+        return excludeTestOutput;
+    }
+
+    /**
+     * True if classes changed by auto builds are enhanced by a background job
+     * instead of during the build.
+     */
+    public boolean isDeferred()
+    {
+        return deferred;
+    }
+
+    @Override
+    public String toString()
+    {
+        return "debug=" + debugLevel + " enhanceDebug=" + enhanceDebugLevel + " parallelism=" + parallelism + " excludeTestOutput="
+                + excludeTestOutput + " deferred=" + deferred;
+    }
+}
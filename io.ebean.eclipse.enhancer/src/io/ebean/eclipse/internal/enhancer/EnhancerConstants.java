@@ -5,6 +5,7 @@ public final class EnhancerConstants
     public static final String BUILDER_ID = "io.ebean.eclipse.enhancer.builder.ebeanBuilder";
     public static final String NATURE_ID = "io.ebean.eclipse.enhancer.ebeanNature";
     public static final String TOGGLE_NATURE_COMMAND_ID = "io.ebean.eclipse.enhancer.commands.toggleNature";
+    public static final String MARKER_TYPE = "io.ebean.eclipse.enhancer.problem";
 
     private EnhancerConstants()
     {
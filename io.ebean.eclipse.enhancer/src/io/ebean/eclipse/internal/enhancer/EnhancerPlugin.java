@@ -1,26 +1,35 @@
 package io.ebean.eclipse.internal.enhancer;
 
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
 
 import org.eclipse.core.runtime.ILog;
-import org.eclipse.core.runtime.IPath;
 import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.Platform;
+import org.eclipse.core.runtime.Plugin;
 import org.eclipse.core.runtime.Status;
-import org.eclipse.jface.preference.IPreferenceStore;
-import org.eclipse.jface.resource.ImageDescriptor;
-import org.eclipse.ui.plugin.AbstractUIPlugin;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.IPreferenceChangeListener;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences.PreferenceChangeEvent;
+import org.eclipse.core.runtime.preferences.InstanceScope;
+import org.eclipse.debug.core.DebugPlugin;
 import org.osgi.framework.BundleContext;
 
-import io.ebean.eclipse.internal.enhancer.ui.preferences.PreferenceConstants;
+import io.ebean.eclipse.internal.enhancer.builder.BuildStatsHistory;
+import io.ebean.eclipse.internal.enhancer.builder.ClasspathCache;
+import io.ebean.eclipse.internal.enhancer.builder.LaunchBarrier;
 
 /**
  * The activator controlling the plug-in life cycle
+ * <p>
+ * The plugin holds the builder and has no UI dependencies, so headless builds
+ * do not start the workbench. The preference page, menus and views are in the
+ * <code>io.ebean.eclipse.enhancer.ui</code> bundle.
  */
-public class EnhancerPlugin extends AbstractUIPlugin
+public class EnhancerPlugin extends Plugin
 {
     // The plug-in ID
     public static final String PLUGIN_ID = "io.ebean.eclipse.enhancer";
@@ -28,53 +37,67 @@ public class EnhancerPlugin extends AbstractUIPlugin
     // The shared instance
     private static EnhancerPlugin plugin;
 
-    public static PrintStream createTransformLog()
-    {
-        final IPath path = plugin.getStateLocation().addTrailingSeparator().append("enhance.log");
+    private ClasspathCache classpathCache;
 
-        try {
-            return (getEnhanceDebugLevel() > 0) ? createTransformLogStream(path) : createNullTransformLog();
-        }
-        catch (final IOException e) {
-            logError("Error creating log file [" + path.toString() + "]", e);
-            return System.out;
-        }
-    }
+    private TransformLog transformLog;
+
+    private LaunchBarrier launchBarrier;
 
-    private static PrintStream createTransformLogStream(final IPath path) throws IOException
+    private BuildStatsHistory buildStats;
+
+    private volatile EnhancerConfig config = EnhancerConfig.DEFAULT;
+
+    private final IPreferenceChangeListener preferenceListener = new IPreferenceChangeListener()
     {
+        @Override
+        public void preferenceChange(final PreferenceChangeEvent event)
+        {
+            config = EnhancerConfig.read(Platform.getPreferencesService());
+        }
+    };
 
-        final File logFile = path.toFile();
-        if (!logFile.exists()) {
-            logFile.createNewFile();
+    /**
+     * Write a message of the enhancement agents to the enhancement log, without
+     * waiting for it to be written.
+     */
+    public static void logTransform(final String msg)
+    {
+        final EnhancerPlugin current = plugin;
+        if ((current != null) && (current.transformLog != null)) {
+            current.transformLog.log(msg);
         }
+    }
 
-        return new PrintStream(new FileOutputStream(logFile, true));
+    /**
+     * Returns the classpath cache shared by all builds
+     */
+    public static ClasspathCache getClasspathCache()
+    {
+        return plugin.classpathCache;
+    }
 
+    /**
+     * Returns the statistics of the recent builds, null while the plugin is
+     * not running
+     */
+    public static BuildStatsHistory getBuildStats()
+    {
+        final EnhancerPlugin current = plugin;
+        return (current == null) ? null : current.buildStats;
     }
 
-    private static PrintStream createNullTransformLog()
+    /**
+     * Returns the current snapshot of the plugin preferences
+     */
+    public static EnhancerConfig getConfig()
     {
-        final OutputStream outputStream = new OutputStream()
-        {
-            @Override
-            public void write(final int b)
-            {
-                // null writer
-            }
-        };
-
-        return new PrintStream(outputStream);
+        final EnhancerPlugin current = plugin;
+        return (current == null) ? EnhancerConfig.DEFAULT : current.config;
     }
 
     public static int getDebugLevel()
     {
-        if (plugin == null) {
-            return 0;
-        }
-
-        final IPreferenceStore store = plugin.getPreferenceStore();
-        return store.getInt(PreferenceConstants.P_PLUGIN_DEBUG_LEVEL);
+        return getConfig().getDebugLevel();
     }
 
     /**
@@ -89,31 +112,19 @@ public class EnhancerPlugin extends AbstractUIPlugin
 
     public static int getEnhanceDebugLevel()
     {
-        if (plugin == null) {
-            return 0;
-        }
-
-        final IPreferenceStore store = plugin.getPreferenceStore();
-        return store.getInt(PreferenceConstants.P_ENHANCE_DEBUG_LEVEL);
+        return getConfig().getEnhanceDebugLevel();
     }
 
-    /**
-     * Returns an image descriptor for the image file at the given plug-in
-     * relative path
-     *
-     * @param path
-     *            the path
-     * @return the image descriptor
-     */
-    public static ImageDescriptor getImageDescriptor(final String path)
+    public static void logError(final String msg, final Exception e)
     {
-        return imageDescriptorFromPlugin(PLUGIN_ID, path);
+        final ILog log = plugin.getLog();
+        log.log(new Status(IStatus.ERROR, PLUGIN_ID, IStatus.OK, msg, e));
     }
 
-    public static void logError(final String msg, final Exception e)
+    public static void logWarning(final String msg)
     {
         final ILog log = plugin.getLog();
-        log.log(new Status(IStatus.ERROR, PLUGIN_ID, IStatus.OK, msg, e));
+        log.log(new Status(IStatus.WARNING, PLUGIN_ID, IStatus.OK, msg, null));
     }
 
     public static void logInfo(final String msg)
@@ -127,17 +138,65 @@ public class EnhancerPlugin extends AbstractUIPlugin
         log.log(new Status(IStatus.INFO, PLUGIN_ID, IStatus.OK, msg, e));
     }
 
+    /**
+     * The preferences of the plugin in the instance scope, those changed by the
+     * preference page
+     */
+    private static IEclipsePreferences getPreferences()
+    {
+        return InstanceScope.INSTANCE.getNode(PLUGIN_ID);
+    }
+
     @Override
     public void start(final BundleContext context) throws Exception
     {
         super.start(context);
         plugin = this;
 
+        config = EnhancerConfig.read(Platform.getPreferencesService());
+        getPreferences().addPreferenceChangeListener(preferenceListener);
+
+        classpathCache = new ClasspathCache(getStateLocation().toFile());
+        classpathCache.start();
+
+        transformLog = new TransformLog(getStateLocation().append("enhance.log").toFile());
+
+        launchBarrier = new LaunchBarrier();
+        DebugPlugin.getDefault().getLaunchManager().addLaunchListener(launchBarrier);
+
+        buildStats = new BuildStatsHistory(getStateLocation().append("build-stats.jsonl").toFile());
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(buildStats, new ObjectName(BuildStatsHistory.OBJECT_NAME));
+        }
+        catch (final JMException e) {
+            logError("Error registering the build statistics MBean", e);
+        }
     }
 
     @Override
     public void stop(final BundleContext context) throws Exception
     {
+        final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        final ObjectName name = new ObjectName(BuildStatsHistory.OBJECT_NAME);
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        buildStats = null;
+
+        final DebugPlugin debugPlugin = DebugPlugin.getDefault();
+        if (debugPlugin != null) {
+            debugPlugin.getLaunchManager().removeLaunchListener(launchBarrier);
+        }
+        launchBarrier = null;
+
+        classpathCache.stop();
+        classpathCache = null;
+
+        transformLog.close();
+        transformLog = null;
+
+        getPreferences().removePreferenceChangeListener(preferenceListener);
+
         plugin = null;
         super.stop(context);
     }
@@ -0,0 +1,12 @@
+package io.ebean.eclipse.internal.enhancer;
+
+/**
+ * Constant definitions for plug-in preferences
+ */
+public class PreferenceConstants {
+  public static final String P_PLUGIN_DEBUG_LEVEL = "pluginDebugLevelPreference";
+  public static final String P_ENHANCE_DEBUG_LEVEL = "enhanceDebugLevelPreference";
+  public static final String P_ENHANCE_PARALLELISM = "enhanceParallelismPreference";
+  public static final String P_EXCLUDE_TEST_OUTPUT = "excludeTestOutputPreference";
+  public static final String P_DEFERRED_ENHANCEMENT = "deferredEnhancementPreference";
+}
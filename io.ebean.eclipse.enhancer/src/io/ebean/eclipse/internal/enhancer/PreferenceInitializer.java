@@ -1,9 +1,8 @@
 package io.ebean.eclipse.internal.enhancer;
 
 import org.eclipse.core.runtime.preferences.AbstractPreferenceInitializer;
-import org.eclipse.jface.preference.IPreferenceStore;
-
-import io.ebean.eclipse.internal.enhancer.ui.preferences.PreferenceConstants;
+import org.eclipse.core.runtime.preferences.DefaultScope;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
 
 /**
  * Class used to initialise default preference values.
@@ -12,9 +11,12 @@ public class PreferenceInitializer extends AbstractPreferenceInitializer {
 
   @Override
   public void initializeDefaultPreferences() {
-    IPreferenceStore store = EnhancerPlugin.getDefault().getPreferenceStore();
-    store.setDefault(PreferenceConstants.P_PLUGIN_DEBUG_LEVEL, "1");
-    store.setDefault(PreferenceConstants.P_ENHANCE_DEBUG_LEVEL, "1");
+    IEclipsePreferences defaults = DefaultScope.INSTANCE.getNode(EnhancerPlugin.PLUGIN_ID);
+    defaults.putInt(PreferenceConstants.P_PLUGIN_DEBUG_LEVEL, 1);
+    defaults.putInt(PreferenceConstants.P_ENHANCE_DEBUG_LEVEL, 1);
+    defaults.putInt(PreferenceConstants.P_ENHANCE_PARALLELISM, 1);
+    defaults.putBoolean(PreferenceConstants.P_EXCLUDE_TEST_OUTPUT, false);
+    defaults.putBoolean(PreferenceConstants.P_DEFERRED_ENHANCEMENT, false);
   }
 
 }
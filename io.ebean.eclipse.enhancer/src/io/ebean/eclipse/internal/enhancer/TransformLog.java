@@ -0,0 +1,217 @@
+package io.ebean.eclipse.internal.enhancer;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The enhancement log (<code>enhance.log</code>), written by a background
+ * thread for the lifetime of the plugin.
+ * <p>
+ * Messages are put on a bounded queue so logging never blocks the builder, when
+ * the queue is full messages are dropped and the number dropped is written
+ * once there is room again. The log is rotated when it grows past
+ * {@link #MAX_SIZE}, keeping {@link #BACKUPS} older files.
+ */
+final class TransformLog
+{
+    private static final int CAPACITY = 10000;
+
+    private static final long MAX_SIZE = 5 * 1024 * 1024;
+
+    private static final int BACKUPS = 3;
+
+    private static final String LINE_SEPARATOR = System.getProperty("line.separator");
+
+    private final File file;
+
+    private final BlockingQueue<String> queue = new ArrayBlockingQueue<>(CAPACITY);
+
+    private final AtomicInteger dropped = new AtomicInteger();
+
+    private final Thread writerThread;
+
+    private volatile boolean running = true;
+
+    private Writer writer;
+
+    /**
+     * The size of the log file in bytes, counted as UTF-8 as written.
+     */
+    private long size;
+
+    TransformLog(final File file)
+    {
+        this.file = file;
+        this.writerThread = new Thread(new Runnable()
+        {
+            @Override
+            public void run()
+            {
+                drain();
+            }
+        }, "Ebean Enhance Log Writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    /**
+     * Queue a message for the log, never blocking.
+     */
+    void log(final String message)
+    {
+        if (!queue.offer(message)) {
+            dropped.incrementAndGet();
+        }
+    }
+
+    /**
+     * Write the queued messages and close the log.
+     */
+    void close()
+    {
+        running = false;
+        writerThread.interrupt();
+        try {
+            writerThread.join(TimeUnit.SECONDS.toMillis(5));
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain()
+    {
+        final List<String> batch = new ArrayList<>();
+        try {
+            while (running) {
+                final String first;
+                try {
+                    first = queue.take();
+                }
+                catch (final InterruptedException e) {
+                    break;
+                }
+                batch.add(first);
+                queue.drainTo(batch);
+                write(batch);
+            }
+            queue.drainTo(batch);
+            write(batch);
+        }
+        finally {
+            closeWriter();
+        }
+    }
+
+    private void write(final List<String> batch)
+    {
+        final int lost = dropped.getAndSet(0);
+        if (lost > 0) {
+            batch.add("... " + lost + " log messages dropped");
+        }
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        try {
+            for (final String message : batch) {
+                if (size > MAX_SIZE) {
+                    rotate();
+                }
+                final Writer w = writer();
+                w.write(message);
+                w.write(LINE_SEPARATOR);
+                size += encodedLength(message) + LINE_SEPARATOR.length();
+            }
+            writer.flush();
+        }
+        catch (final IOException e) {
+            closeWriter();
+            EnhancerPlugin.logError("Error writing log file [" + file + "]", e);
+        }
+        finally {
+            batch.clear();
+        }
+    }
+
+    /**
+     * Return the number of bytes the given message takes in UTF-8.
+     */
+    private static int encodedLength(final String message)
+    {
+        int length = 0;
+        for (int i = 0; i < message.length(); i++) {
+            final char c = message.charAt(i);
+            if (c < 0x80) {
+                length++;
+            }
+            else if (c < 0x800) {
+                length += 2;
+            }
+            else if (Character.isHighSurrogate(c) && (i + 1 < message.length()) && Character.isLowSurrogate(message.charAt(i + 1))) {
+                length += 4;
+                i++;
+            }
+            else {
+                // a lone surrogate is written as '?'
+                length += Character.isSurrogate(c) ? 1 : 3;
+            }
+        }
+        return length;
+    }
+
+    private Writer writer() throws IOException
+    {
+        if (writer == null) {
+            final File dir = file.getParentFile();
+            if (!dir.exists() && !dir.mkdirs()) {
+                throw new IOException("Could not create " + dir);
+            }
+            size = file.length();
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file, true), StandardCharsets.UTF_8));
+        }
+        return writer;
+    }
+
+    private void rotate()
+    {
+        closeWriter();
+        for (int i = BACKUPS; i > 0; i--) {
+            final File from = (i == 1) ? file : backup(i - 1);
+            final File to = backup(i);
+            if (from.exists() && (!to.exists() || to.delete())) {
+                from.renameTo(to);
+            }
+        }
+        size = 0;
+    }
+
+    private File backup(final int number)
+    {
+        return new File(file.getParentFile(), file.getName() + "." + number);
+    }
+
+    private void closeWriter()
+    {
+        if (writer != null) {
+            try {
+                writer.close();
+            }
+            catch (final IOException e) {
+                // nothing more can be logged
+            }
+            writer = null;
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.lang.reflect.Method;
+
+/**
+ * Measures the bytes allocated by the current thread, where the JVM supports
+ * it (the HotSpot <code>com.sun.management.ThreadMXBean</code>).
+ * <p>
+ * The extension is reached by reflection so the plugin does not need to import
+ * a <code>com.sun</code> package.
+ */
+final class AllocationMeter
+{
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private static final Method ALLOCATED_BYTES = allocatedBytesMethod();
+
+    private AllocationMeter()
+    {
+    }
+
+    /**
+     * Return true if allocated bytes can be measured.
+     */
+    static boolean isSupported()
+    {
+        return ALLOCATED_BYTES != null;
+    }
+
+    /**
+     * Return the bytes allocated so far by the current thread, -1 if not
+     * supported.
+     */
+    static long currentThreadAllocatedBytes()
+    {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREADS, Thread.currentThread().getId());
+        }
+        catch (final ReflectiveOperationException | RuntimeException e) {
+            return -1;
+        }
+    }
+
+    private static Method allocatedBytesMethod()
+    {
+        try {
+            final Class<?> type = ClassLoader.getSystemClassLoader().loadClass("com.sun.management.ThreadMXBean");
+            if (!type.isInstance(THREADS)) {
+                return null;
+            }
+            final Method method = type.getMethod("getThreadAllocatedBytes", long.class);
+            method.invoke(THREADS, Thread.currentThread().getId());
+            return method;
+        }
+        catch (final ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+}
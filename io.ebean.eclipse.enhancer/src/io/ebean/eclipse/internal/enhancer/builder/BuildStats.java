@@ -0,0 +1,348 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The counters and timers of one build, updated by the builder and its worker
+ * threads and read once the build has finished.
+ */
+public final class BuildStats
+{
+    /**
+     * The number of slowest classes kept.
+     */
+    static final int SLOWEST = 10;
+
+    private static final Comparator<ClassTime> FASTEST_FIRST = new Comparator<ClassTime>()
+    {
+        @Override
+        public int compare(final ClassTime a, final ClassTime b)
+        {
+            return Long.compare(a.nanos, b.nanos);
+        }
+    };
+
+    private final String project;
+
+    private final long startMillis = System.currentTimeMillis();
+
+    private final long startNanos = System.nanoTime();
+
+    private volatile String kind = "incremental";
+
+    private volatile long durationNanos;
+
+    private volatile boolean canceled;
+
+    private final Object event = EnhanceEvents.BUILD.begin();
+
+    private final AtomicInteger visited = new AtomicInteger();
+
+    private final AtomicInteger upToDate = new AtomicInteger();
+
+    private final AtomicInteger filtered = new AtomicInteger();
+
+    private final AtomicInteger transformed = new AtomicInteger();
+
+    private final AtomicInteger enhanced = new AtomicInteger();
+
+    private final AtomicInteger failed = new AtomicInteger();
+
+    private final AtomicLong bytesRead = new AtomicLong();
+
+    private final AtomicLong bytesWritten = new AtomicLong();
+
+    private final AtomicLong classpathNanos = new AtomicLong();
+
+    private final AtomicLong transformNanos = new AtomicLong();
+
+    private final AtomicLong sourceLookupNanos = new AtomicLong();
+
+    private final AtomicLong writeNanos = new AtomicLong();
+
+    /**
+     * The slowest classes transformed, fastest first so it is the one dropped.
+     */
+    private final PriorityQueue<ClassTime> slowest = new PriorityQueue<>(SLOWEST + 1, FASTEST_FIRST);
+
+    BuildStats(final String project)
+    {
+        this.project = project;
+    }
+
+    void setKind(final String kind)
+    {
+        this.kind = kind;
+    }
+
+    /**
+     * Stop the build clock.
+     */
+    void finish(final boolean canceled)
+    {
+        this.canceled = canceled;
+        this.durationNanos = System.nanoTime() - startNanos;
+        EnhanceEvents.BUILD.commit(event, project, null, getBytesRead(), getBytesWritten(), canceled ? kind + " canceled" : kind);
+    }
+
+    void visited(final int length)
+    {
+        visited.incrementAndGet();
+        bytesRead.addAndGet(length);
+    }
+
+    void upToDate()
+    {
+        upToDate.incrementAndGet();
+    }
+
+    void filtered()
+    {
+        filtered.incrementAndGet();
+    }
+
+    void transformed(final String className, final long nanos)
+    {
+        transformed.incrementAndGet();
+        transformNanos.addAndGet(nanos);
+        synchronized (slowest) {
+            if ((slowest.size() < SLOWEST) || (nanos > slowest.peek().nanos)) {
+                slowest.add(new ClassTime(className, nanos));
+                if (slowest.size() > SLOWEST) {
+                    slowest.poll();
+                }
+            }
+        }
+    }
+
+    void written(final int length, final long nanos)
+    {
+        enhanced.incrementAndGet();
+        bytesWritten.addAndGet(length);
+        writeNanos.addAndGet(nanos);
+    }
+
+    void failed()
+    {
+        failed.incrementAndGet();
+    }
+
+    void classpathResolved(final long nanos)
+    {
+        classpathNanos.addAndGet(nanos);
+    }
+
+    void sourceLookedUp(final long nanos)
+    {
+        sourceLookupNanos.addAndGet(nanos);
+    }
+
+    public String getProject()
+    {
+        return project;
+    }
+
+    /**
+     * One of full, incremental or deferred.
+     */
+    public String getKind()
+    {
+        return kind;
+    }
+
+    public long getStartMillis()
+    {
+        return startMillis;
+    }
+
+    public long getDurationMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(durationNanos);
+    }
+
+    public boolean isCanceled()
+    {
+        return canceled;
+    }
+
+    /**
+     * The class files read.
+     */
+    public int getVisited()
+    {
+        return visited.get();
+    }
+
+    /**
+     * The class files skipped as unchanged since their last enhancement.
+     */
+    public int getUpToDate()
+    {
+        return upToDate.get();
+    }
+
+    /**
+     * The classes skipped as not needing enhancement.
+     */
+    public int getFiltered()
+    {
+        return filtered.get();
+    }
+
+    /**
+     * The classes the transformers ran on.
+     */
+    public int getTransformed()
+    {
+        return transformed.get();
+    }
+
+    /**
+     * The enhanced classes written.
+     */
+    public int getEnhanced()
+    {
+        return enhanced.get();
+    }
+
+    public int getFailed()
+    {
+        return failed.get();
+    }
+
+    public long getBytesRead()
+    {
+        return bytesRead.get();
+    }
+
+    public long getBytesWritten()
+    {
+        return bytesWritten.get();
+    }
+
+    public long getClasspathMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(classpathNanos.get());
+    }
+
+    /**
+     * The time spent in the transformers, summed over the threads.
+     */
+    public long getTransformMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(transformNanos.get());
+    }
+
+    public long getSourceLookupMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(sourceLookupNanos.get());
+    }
+
+    public long getWriteMillis()
+    {
+        return TimeUnit.NANOSECONDS.toMillis(writeNanos.get());
+    }
+
+    /**
+     * The slowest classes to transform, slowest first.
+     */
+    public List<ClassTime> getSlowest()
+    {
+        final List<ClassTime> list;
+        synchronized (slowest) {
+            list = new ArrayList<>(slowest);
+        }
+        Collections.sort(list, Collections.reverseOrder(FASTEST_FIRST));
+        return list;
+    }
+
+    /**
+     * Return these statistics as a single line JSON object.
+     */
+    public String toJson()
+    {
+        final StringBuilder sb = new StringBuilder(512);
+        sb.append("{\"project\":");
+        appendString(sb, project);
+        sb.append(",\"kind\":\"").append(kind).append('"');
+        sb.append(",\"start\":").append(startMillis);
+        sb.append(",\"durationMillis\":").append(getDurationMillis());
+        sb.append(",\"canceled\":").append(canceled);
+        sb.append(",\"visited\":").append(getVisited());
+        sb.append(",\"upToDate\":").append(getUpToDate());
+        sb.append(",\"filtered\":").append(getFiltered());
+        sb.append(",\"transformed\":").append(getTransformed());
+        sb.append(",\"enhanced\":").append(getEnhanced());
+        sb.append(",\"failed\":").append(getFailed());
+        sb.append(",\"bytesRead\":").append(getBytesRead());
+        sb.append(",\"bytesWritten\":").append(getBytesWritten());
+        sb.append(",\"classpathMillis\":").append(getClasspathMillis());
+        sb.append(",\"transformMillis\":").append(getTransformMillis());
+        sb.append(",\"sourceLookupMillis\":").append(getSourceLookupMillis());
+        sb.append(",\"writeMillis\":").append(getWriteMillis());
+        sb.append(",\"slowest\":[");
+        String separator = "";
+        for (final ClassTime time : getSlowest()) {
+            sb.append(separator).append("{\"class\":");
+            appendString(sb, time.className);
+            sb.append(",\"micros\":").append(time.getMicros()).append('}');
+            separator = ",";
+        }
+        return sb.append("]}").toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return toJson();
+    }
+
+    private static void appendString(final StringBuilder sb, final String value)
+    {
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            final char c = value.charAt(i);
+            if ((c == '"') || (c == '\\')) {
+                sb.append('\\').append(c);
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        sb.append('"');
+    }
+
+    /**
+     * The time one class took to transform.
+     */
+    public static final class ClassTime
+    {
+        private final String className;
+
+        private final long nanos;
+
+        private ClassTime(final String className, final long nanos)
+        {
+            this.className = className;
+            this.nanos = nanos;
+        }
+
+        public String getClassName()
+        {
+            return className;
+        }
+
+        public long getMicros()
+        {
+            return TimeUnit.NANOSECONDS.toMicros(nanos);
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * Keeps the statistics of the recent builds for the view and the MBean, and
+ * appends every build as one JSON line to a file for trending.
+ */
+public final class BuildStatsHistory implements BuildStatsMXBean
+{
+    public static final String OBJECT_NAME = "io.ebean.eclipse.enhancer:type=BuildStats";
+
+    /**
+     * The number of builds kept in memory.
+     */
+    private static final int RECENT = 50;
+
+    /**
+     * The size at which the file is rolled over, keeping one backup.
+     */
+    private static final long MAX_FILE_SIZE = 5 * 1024 * 1024;
+
+    /**
+     * Notified when a build is recorded, on the thread that ran it, or the
+     * history is cleared.
+     */
+    public interface Listener
+    {
+        void historyChanged();
+    }
+
+    private final File file;
+
+    private final Deque<BuildStats> recent = new ArrayDeque<>();
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private long buildCount;
+
+    private long totalBuildMillis;
+
+    private long totalEnhanced;
+
+    private long totalFailed;
+
+    /**
+     * @param file
+     *            the file the builds are appended to, null for none
+     */
+    public BuildStatsHistory(final File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Record a finished build.
+     */
+    void add(final BuildStats stats)
+    {
+        synchronized (this) {
+            recent.addFirst(stats);
+            if (recent.size() > RECENT) {
+                recent.removeLast();
+            }
+            buildCount++;
+            totalBuildMillis += stats.getDurationMillis();
+            totalEnhanced += stats.getEnhanced();
+            totalFailed += stats.getFailed();
+        }
+        if (file != null) {
+            append(stats.toJson());
+        }
+        for (final Listener listener : listeners) {
+            listener.historyChanged();
+        }
+    }
+
+    /**
+     * The recent builds, the latest first.
+     */
+    public synchronized List<BuildStats> getRecent()
+    {
+        return new ArrayList<>(recent);
+    }
+
+    public void addListener(final Listener listener)
+    {
+        listeners.add(listener);
+    }
+
+    public void removeListener(final Listener listener)
+    {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public synchronized long getBuildCount()
+    {
+        return buildCount;
+    }
+
+    @Override
+    public synchronized long getTotalBuildMillis()
+    {
+        return totalBuildMillis;
+    }
+
+    @Override
+    public synchronized long getTotalEnhancedClasses()
+    {
+        return totalEnhanced;
+    }
+
+    @Override
+    public synchronized long getTotalFailedClasses()
+    {
+        return totalFailed;
+    }
+
+    @Override
+    public synchronized String getLastBuild()
+    {
+        return recent.isEmpty() ? "" : recent.getFirst().toJson();
+    }
+
+    @Override
+    public synchronized String[] getRecentBuilds()
+    {
+        final String[] builds = new String[recent.size()];
+        int i = 0;
+        for (final BuildStats stats : recent) {
+            builds[i++] = stats.toJson();
+        }
+        return builds;
+    }
+
+    @Override
+    public void clear()
+    {
+        synchronized (this) {
+            recent.clear();
+            buildCount = 0;
+            totalBuildMillis = 0;
+            totalEnhanced = 0;
+            totalFailed = 0;
+        }
+        for (final Listener listener : listeners) {
+            listener.historyChanged();
+        }
+    }
+
+    private synchronized void append(final String json)
+    {
+        try {
+            if (file.length() > MAX_FILE_SIZE) {
+                final File backup = new File(file.getPath() + ".1");
+                backup.delete();
+                file.renameTo(backup);
+            }
+            try (OutputStream out = new FileOutputStream(file, true)) {
+                out.write((json + '\n').getBytes(StandardCharsets.UTF_8));
+            }
+        }
+        catch (final IOException e) {
+            EnhancerPlugin.logError("Error writing build statistics to " + file, e);
+        }
+    }
+}
@@ -0,0 +1,34 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+/**
+ * The enhancement statistics published on the platform MBean server, under
+ * {@link BuildStatsHistory#OBJECT_NAME}.
+ */
+public interface BuildStatsMXBean
+{
+    /**
+     * The number of builds recorded since the plugin started.
+     */
+    long getBuildCount();
+
+    long getTotalBuildMillis();
+
+    long getTotalEnhancedClasses();
+
+    long getTotalFailedClasses();
+
+    /**
+     * The statistics of the last build as JSON, empty before the first build.
+     */
+    String getLastBuild();
+
+    /**
+     * The statistics of the recent builds as JSON, the latest first.
+     */
+    String[] getRecentBuilds();
+
+    /**
+     * Forget the recorded builds.
+     */
+    void clear();
+}
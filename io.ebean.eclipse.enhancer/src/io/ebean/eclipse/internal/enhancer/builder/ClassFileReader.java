@@ -0,0 +1,96 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IPath;
+
+/**
+ * Reads class files with as few copies as possible.
+ * <p>
+ * Files on the local file system are read straight into an array of their
+ * size. Other files go through the resource stream into a per-thread buffer
+ * that is reused for every class read on that thread.
+ */
+final class ClassFileReader
+{
+    private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+    /**
+     * Buffers above this size are not kept for the next class.
+     */
+    private static final int MAX_RETAINED_BUFFER_SIZE = 1024 * 1024;
+
+    private static final ThreadLocal<byte[]> BUFFER = new ThreadLocal<byte[]>()
+    {
+        @Override
+        protected byte[] initialValue()
+        {
+            return new byte[INITIAL_BUFFER_SIZE];
+        }
+    };
+
+    private ClassFileReader()
+    {
+    }
+
+    /**
+     * Return the content of the given class file.
+     */
+    static byte[] read(final IFile file) throws CoreException, IOException
+    {
+        final IPath location = file.getLocation();
+        if ((location != null) && file.isSynchronized(IResource.DEPTH_ZERO)) {
+            try (FileChannel channel = FileChannel.open(location.toFile().toPath(), StandardOpenOption.READ)) {
+                return read(channel);
+            }
+        }
+
+        try (InputStream is = file.getContents()) {
+            return read(is);
+        }
+    }
+
+    private static byte[] read(final FileChannel channel) throws IOException
+    {
+        final long size = channel.size();
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Class file too large: " + size);
+        }
+
+        final byte[] bytes = new byte[(int) size];
+        final ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Class file truncated while reading");
+            }
+        }
+        return bytes;
+    }
+
+    private static byte[] read(final InputStream in) throws IOException
+    {
+        byte[] buffer = BUFFER.get();
+        int count = 0;
+        int len;
+        while ((len = in.read(buffer, count, buffer.length - count)) > -1) {
+            count += len;
+            if (count == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+        }
+
+        if (buffer.length <= MAX_RETAINED_BUFFER_SIZE) {
+            BUFFER.set(buffer);
+        }
+        return Arrays.copyOf(buffer, count);
+    }
+}
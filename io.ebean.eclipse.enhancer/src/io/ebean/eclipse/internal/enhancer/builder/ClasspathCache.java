@@ -0,0 +1,354 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.jdt.core.ElementChangedEvent;
+import org.eclipse.jdt.core.IElementChangedListener;
+import org.eclipse.jdt.core.IJavaElement;
+import org.eclipse.jdt.core.IJavaElementDelta;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.launching.JavaRuntime;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+import io.ebean.eclipse.internal.enhancer.engine.CachingClassBytesReader;
+import io.ebean.eclipse.internal.enhancer.engine.ClassMetaCache;
+import io.ebean.eclipse.internal.enhancer.engine.ClasspathIndex;
+import io.ebean.eclipse.internal.enhancer.engine.IndexedClassLoader;
+import io.ebean.enhance.agent.UrlPathHelper;
+
+/**
+ * Caches the resolved runtime classpath and the classloader of its jars per
+ * project across builds, the classloader finding classes through the
+ * {@link ClasspathIndex}.
+ * <p>
+ * Classes of the output folders change with every build while a classloader
+ * keeps the classes it loaded, so folders are left to a loader created per
+ * build, see {@link Entry#newClassLoader()}.
+ * <p>
+ * An entry is dropped when JDT reports a classpath change for any project (the
+ * runtime classpath includes required projects, so one project's change can
+ * affect the others) or when a jar on the classpath has changed on disk.
+ * <p>
+ * Each entry looks up classes through a {@link ClasspathIndex}, kept per
+ * classpath fingerprint in the state location so later sessions reuse it. The
+ * class metadata read by the entity transformers is shared by all entries in a
+ * {@link ClassMetaCache}, also kept in the state location. It is loaded on the
+ * first build and saved after builds that added to it.
+ */
+public final class ClasspathCache implements IElementChangedListener
+{
+    private static final int CLASSPATH_FLAGS = IJavaElementDelta.F_CLASSPATH_CHANGED | IJavaElementDelta.F_RESOLVED_CLASSPATH_CHANGED;
+
+    private final Map<String, Entry> entries = new HashMap<>();
+
+    private final List<Entry> retired = new ArrayList<>();
+
+    private final File classMetaFile;
+
+    private final File indexDirectory;
+
+    private ClassMetaCache classMeta;
+
+    /**
+     * @param stateLocation
+     *            the directory the class metadata and classpath indexes are
+     *            kept in
+     */
+    public ClasspathCache(final File stateLocation)
+    {
+        this.classMetaFile = new File(stateLocation, "class-meta.bin");
+        this.indexDirectory = new File(stateLocation, "classpath-index");
+    }
+
+    public void start()
+    {
+        JavaCore.addElementChangedListener(this, ElementChangedEvent.POST_CHANGE);
+    }
+
+    public void stop()
+    {
+        JavaCore.removeElementChangedListener(this);
+        synchronized (entries) {
+            retired.addAll(entries.values());
+            entries.clear();
+            closeRetired();
+        }
+        saveClassMeta();
+    }
+
+    /**
+     * Write the shared class metadata to its file if builds added to it.
+     */
+    void saveClassMeta()
+    {
+        final ClassMetaCache current;
+        synchronized (entries) {
+            current = classMeta;
+        }
+        if ((current == null) || !current.isDirty()) {
+            return;
+        }
+        synchronized (classMetaFile) {
+            try {
+                current.save(classMetaFile);
+            }
+            catch (final IOException e) {
+                EnhancerPlugin.logError("Error saving the class metadata cache", e);
+            }
+        }
+    }
+
+    /**
+     * Return the cached classpath entry for the project, resolving it if there
+     * is none or the cached one is stale. Each acquired entry must be given back
+     * via {@link #release(Entry)}.
+     */
+    Entry acquire(final IProject project) throws CoreException
+    {
+        synchronized (entries) {
+            Entry entry = entries.get(project.getName());
+            if ((entry != null) && entry.isStale()) {
+                if (EnhancerPlugin.getDebugLevel() >= 2) {
+                    EnhancerPlugin.logInfo("... classpath jar changed for " + project.getName());
+                }
+                entries.remove(project.getName());
+                retired.add(entry);
+                entry = null;
+            }
+
+            if (entry == null) {
+                if (classMeta == null) {
+                    classMeta = ClassMetaCache.load(classMetaFile);
+                }
+                entry = new Entry(project.getName(), resolve(project), indexDirectory, classMeta);
+                entries.put(project.getName(), entry);
+                if (EnhancerPlugin.getDebugLevel() >= 2) {
+                    EnhancerPlugin.logInfo("... classpath: " + Arrays.toString(entry.getClasspath()));
+                }
+            }
+            entry.users++;
+            return entry;
+        }
+    }
+
+    void release(final Entry entry)
+    {
+        synchronized (entries) {
+            entry.users--;
+            closeRetired();
+        }
+    }
+
+    /**
+     * Drop the cached classpath of all projects.
+     */
+    void invalidateAll()
+    {
+        synchronized (entries) {
+            retired.addAll(entries.values());
+            entries.clear();
+            closeRetired();
+        }
+    }
+
+    @Override
+    public void elementChanged(final ElementChangedEvent event)
+    {
+        if (isClasspathChange(event.getDelta())) {
+            if (EnhancerPlugin.getDebugLevel() >= 2) {
+                EnhancerPlugin.logInfo("... classpath changed, dropping cached classpaths");
+            }
+            invalidateAll();
+        }
+    }
+
+    private boolean isClasspathChange(final IJavaElementDelta delta)
+    {
+        final IJavaElement element = delta.getElement();
+        if (element.getElementType() == IJavaElement.JAVA_PROJECT) {
+            return ((delta.getFlags() & CLASSPATH_FLAGS) != 0) || (delta.getKind() == IJavaElementDelta.REMOVED)
+                    || ((delta.getFlags() & IJavaElementDelta.F_CLOSED) != 0);
+        }
+
+        if (element.getElementType() == IJavaElement.JAVA_MODEL) {
+            for (final IJavaElementDelta child : delta.getAffectedChildren()) {
+                if (isClasspathChange(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private void closeRetired()
+    {
+        for (final Iterator<Entry> it = retired.iterator(); it.hasNext();) {
+            final Entry entry = it.next();
+            if (entry.users > 0) {
+                // still used by a running build, closed on release
+                continue;
+            }
+            it.remove();
+            try {
+                entry.index.close();
+            }
+            catch (final IOException e) {
+                EnhancerPlugin.logError("Error closing classpath index", e);
+            }
+        }
+    }
+
+    private static URL[] resolve(final IProject project) throws CoreException
+    {
+        final IJavaProject javaProject = JavaCore.create(project);
+
+        final String[] ideClassPath = JavaRuntime.computeDefaultRuntimeClassPath(javaProject);
+
+        return UrlPathHelper.convertToUrl(ideClassPath);
+    }
+
+    /**
+     * A resolved classpath with its index and the classloader of its jars, the
+     * reader of class metadata through the index and the stamps of its jars.
+     */
+    static final class Entry
+    {
+        private final URL[] classpath;
+
+        /**
+         * Loads the classes of the jars through the index.
+         */
+        private final IndexedClassLoader libraryLoader;
+
+        private final ClasspathIndex index;
+
+        private final CachingClassBytesReader classBytesReader;
+
+        private final File[] jars;
+
+        private final long[] stamps;
+
+        private final String fingerprint;
+
+        /**
+         * Number of sessions currently using the classloader, guarded by the
+         * cache.
+         */
+        private int users;
+
+        private Entry(final String project, final URL[] classpath, final File indexDirectory, final ClassMetaCache classMeta)
+        {
+            this.classpath = classpath;
+
+            final List<File> files = new ArrayList<>();
+            for (final URL url : classpath) {
+                final File file = toFile(url);
+                if ((file != null) && file.isFile()) {
+                    files.add(file);
+                }
+            }
+            this.jars = files.toArray(new File[files.size()]);
+            this.stamps = new long[jars.length];
+            final StringBuilder sb = new StringBuilder();
+            for (final URL url : classpath) {
+                sb.append(url).append('\n');
+            }
+            for (int i = 0; i < jars.length; i++) {
+                stamps[i] = stamp(jars[i]);
+                sb.append(stamps[i]).append('\n');
+            }
+            this.fingerprint = sb.toString();
+
+            final Object indexEvent = EnhanceEvents.CLASSPATH_INDEX.begin();
+            this.index = ClasspathIndex.open(classpath, indexDirectory);
+            EnhanceEvents.CLASSPATH_INDEX.commit(indexEvent, project, null, index.getJarCount(), index.getPackageCount(),
+                    index.isReused() ? "reused" : "built");
+
+            final Object event = EnhanceEvents.CLASSLOADER.begin();
+            this.libraryLoader = new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, false);
+            EnhanceEvents.CLASSLOADER.commit(event, project, null, jars.length, 0, "library");
+
+            // the loader's parent first, as the loader itself would
+            this.classBytesReader = new CachingClassBytesReader(libraryLoader.getParent(), index, classMeta);
+        }
+
+        URL[] getClasspath()
+        {
+            return classpath;
+        }
+
+        /**
+         * The number of jars on the classpath, the other entries are folders.
+         */
+        int getJarCount()
+        {
+            return jars.length;
+        }
+
+        /**
+         * Return a new classloader over the classpath in classpath order,
+         * defining the classes of its folders and taking those of its jars
+         * from the cached loader. The agents resolve classes with it to compute
+         * stack map frames, so it must not outlive the build: the loaded
+         * workspace classes would keep their old supertypes.
+         */
+        IndexedClassLoader newClassLoader()
+        {
+            return libraryLoader.withFolders();
+        }
+
+        CachingClassBytesReader getClassBytesReader()
+        {
+            return classBytesReader;
+        }
+
+        /**
+         * The entries of the classpath and the stamps of its jars, as they were
+         * when the entry was created.
+         */
+        String getFingerprint()
+        {
+            return fingerprint;
+        }
+
+        private boolean isStale()
+        {
+            for (int i = 0; i < jars.length; i++) {
+                if (stamp(jars[i]) != stamps[i]) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private static long stamp(final File file)
+        {
+            return (file.lastModified() * 31) + file.length();
+        }
+
+        private static File toFile(final URL url)
+        {
+            if (!"file".equals(url.getProtocol())) {
+                return null;
+            }
+            try {
+                return new File(url.toURI());
+            }
+            catch (final URISyntaxException | IllegalArgumentException e) {
+                return new File(url.getPath());
+            }
+        }
+    }
+}
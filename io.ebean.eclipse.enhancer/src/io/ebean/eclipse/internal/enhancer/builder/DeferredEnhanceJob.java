@@ -0,0 +1,125 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.ResourcesPlugin;
+import org.eclipse.core.resources.WorkspaceJob;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+
+/**
+ * Enhances the class files of a project changed by auto builds in the
+ * background, when deferred enhancement is enabled.
+ * <p>
+ * The builder only hands over the changed and removed class files, the markers
+ * of removed ones are deleted by the job. The job waits
+ * {@link #COALESCE_DELAY} after the last of them so a burst of saves is
+ * enhanced in one pass, under a rule covering just the output folders. The job
+ * belongs to the auto build family, so anything waiting for the build (like
+ * launches) also waits for it.
+ * <p>
+ * A canceled run keeps its class files pending, they are enhanced by the next
+ * run or by the next build of the project.
+ */
+final class DeferredEnhanceJob extends WorkspaceJob
+{
+    /**
+     * The family of all deferred enhancement jobs.
+     */
+    static final Object FAMILY = DeferredEnhanceJob.class;
+
+    private static final long COALESCE_DELAY = 500;
+
+    private final EnhanceBuilder builder;
+
+    private final Set<IFile> pending = new LinkedHashSet<>();
+
+    DeferredEnhanceJob(final EnhanceBuilder builder, final IProject project)
+    {
+        super("Ebean enhancement of " + project.getName());
+        this.builder = builder;
+        setSystem(true);
+    }
+
+    /**
+     * Add changed or removed class files and (re)start the coalescing delay.
+     */
+    void add(final EnhanceScope scope, final List<IFile> files)
+    {
+        if (files.isEmpty()) {
+            return;
+        }
+        synchronized (pending) {
+            pending.addAll(files);
+        }
+        synchronized (this) {
+            // the rule can only change while the job is not scheduled
+            if (getState() == NONE) {
+                setRule(scope.getOutputRule());
+            }
+        }
+        schedule(COALESCE_DELAY);
+    }
+
+    /**
+     * Return true if class files are waiting for enhancement.
+     */
+    boolean hasPending()
+    {
+        synchronized (pending) {
+            return !pending.isEmpty();
+        }
+    }
+
+    /**
+     * Take the pending class files, for a build enhancing them itself.
+     */
+    List<IFile> takePending()
+    {
+        synchronized (pending) {
+            final List<IFile> files = new ArrayList<>(pending);
+            pending.clear();
+            return files;
+        }
+    }
+
+    /**
+     * Forget the pending class files, a full build enhances them anyway.
+     */
+    void clear()
+    {
+        synchronized (pending) {
+            pending.clear();
+        }
+    }
+
+    @Override
+    public boolean belongsTo(final Object family)
+    {
+        return (family == FAMILY) || (family == ResourcesPlugin.FAMILY_AUTO_BUILD);
+    }
+
+    @Override
+    public IStatus runInWorkspace(final IProgressMonitor monitor)
+    {
+        final List<IFile> files = takePending();
+        try {
+            builder.enhanceDeferred(files, monitor);
+            return Status.OK_STATUS;
+        }
+        catch (final OperationCanceledException e) {
+            // keep them for the next run or build, the index skips those done
+            synchronized (pending) {
+                pending.addAll(files);
+            }
+            return Status.CANCEL_STATUS;
+        }
+    }
+}
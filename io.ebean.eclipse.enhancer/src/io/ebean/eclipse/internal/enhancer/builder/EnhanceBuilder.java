@@ -1,297 +1,729 @@
 package io.ebean.eclipse.internal.enhancer.builder;
 
-import java.io.BufferedInputStream;
 import java.io.ByteArrayInputStream;
-import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.PrintStream;
-import java.net.URL;
-import java.net.URLClassLoader;
-import java.util.Arrays;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.eclipse.core.resources.IContainer;
 import org.eclipse.core.resources.IFile;
-import org.eclipse.core.resources.IMarker;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
 import org.eclipse.core.resources.IResourceVisitor;
+import org.eclipse.core.resources.IWorkspace;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.IWorkspaceRunnable;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.SubMonitor;
 import org.eclipse.jdt.core.IJavaProject;
-import org.eclipse.jdt.core.IType;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.JavaModelException;
-import org.eclipse.jdt.launching.JavaRuntime;
 
+import io.ebean.eclipse.internal.enhancer.EnhancerConfig;
 import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
-import io.ebean.enhance.agent.MessageOutput;
-import io.ebean.enhance.agent.Transformer;
-import io.ebean.enhance.agent.UrlPathHelper;
-import io.ebean.enhance.asm.ClassReader;
-import io.ebean.enhance.asm.ClassVisitor;
-import io.ebean.enhance.asm.Opcodes;
-import io.ebean.typequery.agent.CombinedTransform;
-import io.ebean.typequery.agent.CombinedTransform.Response;
-import io.ebean.typequery.agent.QueryBeanTransformer;
+import io.ebean.eclipse.internal.enhancer.engine.ClassHeader;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+import io.ebean.eclipse.internal.enhancer.engine.ParallelRunner;
 
 public final class EnhanceBuilder extends IncrementalProjectBuilder
 {
+    private EnhancementIndex index;
+
+    /**
+     * Finds sources for error markers, created when the first marker of a
+     * build is.
+     */
+    private SourceLocator sourceLocator;
+
+    /**
+     * The modification stamps of the class files written by enhancement, their
+     * deltas in the next build need no enhancement.
+     */
+    private final Map<IFile, Long> written = new ConcurrentHashMap<>();
+
+    /**
+     * Enhances auto built classes in the background, created on first use.
+     */
+    private DeferredEnhanceJob deferredJob;
 
     @Override
     protected IProject[] build(final int kind, final Map<String, String> args, final IProgressMonitor monitor) throws CoreException
     {
 
         final IProject project = getProject();
-        if (kind == FULL_BUILD) {
-            fullBuild(monitor);
-        } else {
+        if (index == null) {
+            index = EnhancementIndex.load(project);
+        }
+
+        final EnhancerConfig config = EnhancerPlugin.getConfig();
+        final EnhanceScope scope = EnhanceScope.create(project, config);
+        // the scope of the previous build, a change needs a full build
+        final String lastScope = index.getScope();
+        final boolean scopeChanged = (lastScope != null) && !lastScope.equals(scope.toString());
+        index.setScope(scope.toString());
+        if (scopeChanged && (config.getDebugLevel() >= 1)) {
+            EnhancerPlugin.logInfo("enhancement scope changed to " + scope);
+        }
+
+        final IProject[] upstream = requiredProjects(project);
+
+        if ((kind == AUTO_BUILD) && config.isDeferred() && !scopeChanged) {
             final IResourceDelta delta = getDelta(project);
-            if (delta == null) {
-                fullBuild(monitor);
+            if (delta != null) {
+                final DeltaVisitor visitor = new DeltaVisitor(scope);
+                delta.accept(visitor);
+                visitor.logOwnWrites(config);
+                final List<IFile> files = withDependentChanges(visitor, scope, upstream, config);
+                // their markers go with the job's workspace operation
+                files.addAll(visitor.removed);
+                deferredJob().add(scope, files);
+                return upstream;
+            }
+        }
+
+        boolean canceled = false;
+        BuildStats stats = null;
+        final WorkspaceClasses workspaceClasses = new WorkspaceClasses(scope, upstream, config);
+        try (EnhanceSession session = new EnhanceSession(project, scope.getPackages(), config, workspaceClasses)) {
+            stats = session.getStats();
+            if ((kind == FULL_BUILD) || scopeChanged) {
+                fullBuild(session, scope, monitor);
             } else {
-                delta.accept(new DeltaVisitor(monitor));
+                final IResourceDelta delta = getDelta(project);
+                if (delta == null) {
+                    fullBuild(session, scope, monitor);
+                } else {
+                    final DeltaVisitor visitor = new DeltaVisitor(scope);
+                    delta.accept(visitor);
+                    visitor.logOwnWrites(config);
+                    for (final IFile file : visitor.removed) {
+                        session.getProblems().removed(file);
+                    }
+                    enhanceAll(session, scope, withDeferred(session, withDependentChanges(visitor, scope, upstream, config)), 1, false,
+                            monitor);
+                }
+            }
+
+            if ((config.getDebugLevel() >= 2) && (session.getFilteredCount() > 0)) {
+                EnhancerPlugin.logInfo("... skipped " + session.getFilteredCount() + " classes not needing enhancement");
+            }
+            if (session.getMeasuredCount() > 0) {
+                EnhancerPlugin.logInfo("... allocated " + (session.getAllocatedBytes() / session.getMeasuredCount()) + " bytes per enhanced class");
             }
         }
+        catch (final OperationCanceledException e) {
+            canceled = true;
+        }
+        catch (final IOException e) {
+            EnhancerPlugin.logError("Error closing enhancement session", e);
+        }
+        finally {
+            sourceLocator = null;
+            index.save();
+            record(stats, canceled);
+        }
+
+        if (canceled) {
+            // the index holds what was done, the next (full) build skips it
+            forgetLastBuiltState();
+            if (config.getDebugLevel() >= 1) {
+                EnhancerPlugin.logInfo("enhancement of " + project.getName() + " canceled");
+            }
+            throw new OperationCanceledException();
+        }
 
-        return new IProject[0];
+        // asks for the deltas of these projects in the next build
+        return upstream;
     }
 
     /**
-     * Find the corresponding source for this class in the project.
-     *
-     * @throws CoreException
+     * Return the open projects on the classpath of the given project, the
+     * enhancement of its classes may depend on their classes.
      */
-    private IFile findSourcePath(final IProject project, final String className) throws CoreException
+    private static IProject[] requiredProjects(final IProject project)
     {
-        if (project.hasNature(JavaCore.NATURE_ID)) {
-            final IJavaProject javaProject = JavaCore.create(project);
-            try {
-                final IType type = javaProject.findType(className);
-                if (type != null) {
-                    final IFile sourceFile = project.getWorkspace().getRoot().getFile(type.getPath());
-                    if (sourceFile.exists()) {
-                        return sourceFile;
-                    }
+        final IJavaProject javaProject = JavaCore.create(project);
+        if (!javaProject.exists()) {
+            return new IProject[0];
+        }
+
+        final List<IProject> projects = new ArrayList<>();
+        try {
+            final IWorkspaceRoot root = project.getWorkspace().getRoot();
+            for (final String name : javaProject.getRequiredProjectNames()) {
+                final IProject required = root.getProject(name);
+                if (required.isAccessible()) {
+                    projects.add(required);
+                }
+            }
+        }
+        catch (final JavaModelException e) {
+            EnhancerPlugin.logError("Error reading required projects of " + project.getName(), e);
+        }
+        return projects.toArray(new IProject[projects.size()]);
+    }
+
+    /**
+     * Add the class files depending on the changed classes of this project and
+     * of the given upstream projects to the changed class files, dropping their
+     * index entries so they are enhanced again even if their bytes are not
+     * changed.
+     */
+    private List<IFile> withDependentChanges(final DeltaVisitor visitor, final EnhanceScope scope, final IProject[] upstream,
+            final EnhancerConfig config) throws CoreException
+    {
+        final List<IFile> files = visitor.files;
+        final Set<String> changed = new HashSet<>();
+        addClassNames(changed, scope, files);
+        addClassNames(changed, scope, visitor.removed);
+        for (final IProject required : upstream) {
+            final IResourceDelta delta = getDelta(required);
+            if (delta != null) {
+                final UpstreamVisitor upstreamVisitor = new UpstreamVisitor(EnhanceScope.create(required, config));
+                delta.accept(upstreamVisitor);
+                changed.addAll(upstreamVisitor.classNames);
+            }
+        }
+
+        final Set<IFile> all = new LinkedHashSet<>(files);
+        while (!changed.isEmpty()) {
+            // classes of this project enhanced again may in turn change others
+            final List<IFile> invalidated = new ArrayList<>();
+            for (final String path : index.invalidateReferencing(changed)) {
+                final IFile file = getProject().getFile(path);
+                if (file.exists() && all.add(file)) {
+                    invalidated.add(file);
                 }
             }
-            catch (final JavaModelException e) {
-                EnhancerPlugin.logError("Error in findSourcePath", e);
+            changed.clear();
+            addClassNames(changed, scope, invalidated);
+        }
+        if ((config.getDebugLevel() >= 2) && (all.size() > files.size())) {
+            EnhancerPlugin.logInfo("... enhancing " + (all.size() - files.size()) + " classes again for changes in classes they depend on");
+        }
+        return new ArrayList<>(all);
+    }
+
+    private static void addClassNames(final Set<String> classNames, final EnhanceScope scope, final List<IFile> files)
+    {
+        for (final IFile file : files) {
+            final String className = scope.getClassName(file);
+            if (className != null) {
+                classNames.add(className);
+            }
+        }
+    }
+
+    /**
+     * Add the class files still pending in the deferred job (left by a
+     * canceled run) to the changed class files.
+     */
+    private List<IFile> withDeferred(final EnhanceSession session, final List<IFile> files)
+    {
+        final DeferredEnhanceJob job;
+        synchronized (this) {
+            job = deferredJob;
+        }
+        if ((job == null) || !job.hasPending()) {
+            return files;
+        }
+        final Set<IFile> all = new LinkedHashSet<>(files);
+        all.addAll(job.takePending());
+        return existing(session, all);
+    }
+
+    /**
+     * Return the class files still there, recording the others as removed so
+     * their markers are deleted.
+     */
+    private static List<IFile> existing(final EnhanceSession session, final Collection<IFile> files)
+    {
+        final List<IFile> existing = new ArrayList<>(files.size());
+        for (final IFile file : files) {
+            if (file.exists()) {
+                existing.add(file);
+            } else {
+                session.getProblems().removed(file);
             }
         }
-        return null;
+        return existing;
+    }
 
+    /**
+     * Enhance the class files collected by auto builds in deferred mode, called
+     * by the {@link DeferredEnhanceJob}. The markers of those removed since
+     * are deleted.
+     *
+     * @throws OperationCanceledException
+     *             if canceled, the job then keeps the class files pending
+     */
+    void enhanceDeferred(final List<IFile> files, final IProgressMonitor monitor)
+    {
+        final EnhancerConfig config = EnhancerPlugin.getConfig();
+        final EnhanceScope scope = EnhanceScope.create(getProject(), config);
+        BuildStats stats = null;
+        boolean canceled = false;
+        final WorkspaceClasses workspaceClasses = new WorkspaceClasses(scope, requiredProjects(getProject()), config);
+        try (EnhanceSession session = new EnhanceSession(getProject(), scope.getPackages(), config, workspaceClasses)) {
+            stats = session.getStats();
+            stats.setKind("deferred");
+            enhanceAll(session, scope, existing(session, files), 1, false, monitor);
+        }
+        catch (final OperationCanceledException e) {
+            canceled = true;
+            throw e;
+        }
+        catch (final IOException e) {
+            EnhancerPlugin.logError("Error closing enhancement session", e);
+        }
+        finally {
+            sourceLocator = null;
+            index.save();
+            record(stats, canceled);
+        }
     }
 
-    private void checkResource(final IResource resource, final IProgressMonitor monitor)
+    /**
+     * End the build, recording its statistics if it looked at any class file
+     * and keeping the class metadata it read.
+     */
+    private static void record(final BuildStats stats, final boolean canceled)
     {
-        if (!((resource instanceof IFile) && resource.getName().endsWith(".class"))) {
+        if (stats == null) {
             return;
         }
+        stats.finish(canceled);
 
-        final IFile file = (IFile) resource;
-        final int pluginDebug = EnhancerPlugin.getDebugLevel();
+        final BuildStatsHistory history = EnhancerPlugin.getBuildStats();
+        if ((history != null) && (stats.getVisited() > 0)) {
+            history.add(stats);
+        }
+        EnhancerPlugin.getClasspathCache().saveClassMeta();
+    }
 
-        // try to place error markers on sourceFile, if it does not exist, place marker on project
-        final IProject project = resource.getProject();
-        IFile sourceFile = null;
+    private synchronized DeferredEnhanceJob deferredJob()
+    {
+        if (deferredJob == null) {
+            deferredJob = new DeferredEnhanceJob(this, getProject());
+        }
+        return deferredJob;
+    }
+
+    @Override
+    protected void clean(final IProgressMonitor monitor) throws CoreException
+    {
+        if (index == null) {
+            index = EnhancementIndex.load(getProject());
+        }
+        index.clear();
+        written.clear();
+        ProblemMarkers.clear(getProject());
+    }
+
+    /**
+     * Return true if the class file is unchanged since enhancement wrote it,
+     * forgetting the write either way.
+     */
+    private boolean isOwnWrite(final IFile file)
+    {
+        final Long stamp = written.remove(file);
+        return (stamp != null) && (stamp == file.getModificationStamp());
+    }
+
+    private static boolean isClassFile(final IResource resource)
+    {
+        return (resource instanceof IFile) && resource.getName().endsWith(".class");
+    }
+
+    /**
+     * Read and transform the class file without touching the workspace, this
+     * may run on a worker thread.
+     */
+    private EnhanceResult enhance(final EnhanceSession session, final IFile file)
+    {
+        String className = null;
+        ClassHeader header = null;
 
-        try (InputStream is = file.getContents(); PrintStream transformLog = EnhancerPlugin.createTransformLog()) {
+        final long allocatedBefore = session.isMeasuringAllocation() ? AllocationMeter.currentThreadAllocatedBytes() : -1;
+        final String project = getProject().getName();
+
+        try {
 
             final byte[] classBytes;
+            final Object readEvent = EnhanceEvents.READ.begin();
             try {
-                classBytes = readBytes(is);
+                classBytes = ClassFileReader.read(file);
             }
             catch (final IOException ioe) {
+                EnhanceEvents.READ.commit(readEvent, project, file.getProjectRelativePath().toString(), 0, 0, "failed");
                 EnhancerPlugin.logError("Error during enhancement", ioe);
-                return;
+                return EnhanceResult.unreadable(file);
             }
+            EnhanceEvents.READ.commit(readEvent, project, file.getProjectRelativePath().toString(), classBytes.length, 0, "read");
 
-            final String className = DetermineClass.getClassName(classBytes);
-            sourceFile = findSourcePath(project, className);
+            final BuildStats stats = session.getStats();
+            stats.visited(classBytes.length);
 
-            final URL[] paths = getClasspath();
+            final byte[] inputHash = EnhancementIndex.hash(classBytes);
+            if (index.isUpToDate(file, inputHash, session.getFingerprint())) {
+                stats.upToDate();
+                return EnhanceResult.skipped(file);
+            }
 
-            if (pluginDebug >= 2) {
-                EnhancerPlugin.logInfo("... processing class: " + className);
-                EnhancerPlugin.logInfo("... classpath: " + Arrays.toString(paths));
+            final Object preScanEvent = EnhanceEvents.PRE_SCAN.begin();
+            header = ClassHeader.read(classBytes);
+            final boolean candidate = session.isCandidate(header);
+            EnhanceEvents.PRE_SCAN.commit(preScanEvent, project, header.getClassName().replace('/', '.'), classBytes.length, 0,
+                    candidate ? "candidate" : "skipped");
+            if (!candidate) {
+                stats.filtered();
+                // only a transactional annotation on an interface could change that
+                index.record(file, inputHash, null,
+                        session.getWorkspaceClasses().references(header.getInterfaces(), Collections.<String> emptyList()));
+                return EnhanceResult.skipped(file);
             }
 
-            final int enhanceDebugLevel = EnhancerPlugin.getEnhanceDebugLevel();
+            className = header.getClassName().replace('/', '.');
 
-            try (final URLClassLoader cl = new URLClassLoader(paths)) {
-                final QueryBeanTransformer queryBeanTransformer = new QueryBeanTransformer("debug=" + enhanceDebugLevel, cl, null);
-                final Transformer entityBeanTransformer = new Transformer(paths, "debug=" + enhanceDebugLevel);
-                entityBeanTransformer.setLogout(new MessageOutput()
-                {
-                    @Override
-                    public void println(final String msg)
-                    {
-                        EnhancerPlugin.logInfo(msg);
-                    }
-                });
-
-                final CombinedTransform combined = new CombinedTransform(entityBeanTransformer, queryBeanTransformer);
-                final Response response = combined.transform(cl, className, null, null, classBytes);
-                if (response.isEnhanced()) {
-                    final byte[] outBytes = response.getClassBytes();
-                    final ByteArrayInputStream bais = new ByteArrayInputStream(outBytes);
-                    file.setContents(bais, true, false, monitor);
-                    if (pluginDebug >= 1) {
-                        EnhancerPlugin.logInfo("enhanced: " + className);
-                    }
-                }
-                // create Markers for all errors in SourceFile
-                for (final List<Throwable> list : entityBeanTransformer.getUnexpectedExceptions().values()) {
-                    for (final Throwable t : list) {
-                        createErrorMarker(sourceFile == null ? project : sourceFile, t);
-                    }
-                }
+            if (session.getConfig().getDebugLevel() >= 2) {
+                EnhancerPlugin.logInfo("... processing class: " + className);
             }
 
+            final long transformStart = System.nanoTime();
+            final Object transformEvent = EnhanceEvents.TRANSFORM.begin();
+            Outcome outcome = null;
+            try {
+                outcome = session.transform(header, classBytes);
+            }
+            finally {
+                EnhanceEvents.TRANSFORM.commit(transformEvent, project, className, classBytes.length,
+                        ((outcome == null) || !outcome.isEnhanced()) ? 0 : outcome.getEnhancedBytes().length, outcomeName(outcome));
+            }
+            stats.transformed(className, System.nanoTime() - transformStart);
+            final byte[] enhancedBytes = outcome.getEnhancedBytes();
+            final List<Throwable> errors = outcome.getErrors();
+            if ((enhancedBytes != null) && (allocatedBefore >= 0)) {
+                session.recordAllocation(AllocationMeter.currentThreadAllocatedBytes() - allocatedBefore);
+            }
+            if (errors.isEmpty()) {
+                // classes with errors are retried by the next build
+                index.record(file, inputHash, (enhancedBytes == null) ? null : EnhancementIndex.hash(enhancedBytes),
+                        session.getWorkspaceClasses().references(header.getInterfaces(), header.getReferencedClasses()));
+                return EnhanceResult.transformed(file, className, null, enhancedBytes, errors);
+            }
+            return EnhanceResult.transformed(file, className, sourceFile(header), enhancedBytes, errors);
         }
         catch (final Exception e) {
-            EnhancerPlugin.logError("Error during enhancement", e);
-            createErrorMarker(sourceFile == null ? project : sourceFile, e);
+            return EnhanceResult.failed(file, className, sourceFile(header), e);
         }
     }
 
-    private void createErrorMarker(final IResource target, final Throwable t)
+    private static String outcomeName(final Outcome outcome)
     {
-        try {
-            final IMarker marker = target.createMarker(IMarker.PROBLEM);
-            marker.setAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
-            marker.setAttribute(IMarker.MESSAGE, "Error during enhancement: " + t.getMessage());
-            marker.setAttribute(IMarker.PRIORITY, IMarker.PRIORITY_HIGH);
-            marker.setAttribute(IMarker.LINE_NUMBER, 1);
-        }
-        catch (final CoreException e) {
-            EnhancerPlugin.logError("Error during creating marker", e);
+        if ((outcome == null) || !outcome.getErrors().isEmpty()) {
+            return "failed";
         }
+        return outcome.isEnhanced() ? "enhanced" : "unchanged";
     }
 
-    private void fullBuild(final IProgressMonitor monitor)
+    private static String sourceFile(final ClassHeader header)
     {
+        if (header == null) {
+            return null;
+        }
         try {
-            getProject().accept(new ResourceVisitor(monitor));
+            return header.getSourceFile();
         }
-        catch (final CoreException e) {
-            EnhancerPlugin.logError("Error with fullBuild", e);
+        catch (final RuntimeException e) {
+            // a damaged attribute table only costs the Java model lookup
+            return null;
         }
     }
 
-    private URL[] getClasspath() throws CoreException
+    /**
+     * Write the enhanced class and report its problems, this must run on the
+     * builder thread.
+     */
+    private void apply(final EnhanceSession session, final EnhanceResult result, final IProgressMonitor monitor)
     {
+        final IFile file = result.getFile();
+        final String className = result.getClassName();
+        if (result.isUnreadable()) {
+            // nothing was learned about it, so its markers still hold
+            session.getProblems().kept(file);
+            return;
+        }
+        session.getProblems().processed(file);
 
-        final IProject project = getProject();
-        final IJavaProject javaProject = JavaCore.create(project);
+        // try to place error markers on sourceFile, if it does not exist, place marker on project
+        final BuildStats stats = session.getStats();
+        if (result.getFailure() != null) {
+            stats.failed();
+            EnhancerPlugin.logError("Error during enhancement", result.getFailure());
+            reportProblem(session, result, findMarkerTarget(session, result), result.getFailure());
+            return;
+        }
 
-        final String[] ideClassPath = JavaRuntime.computeDefaultRuntimeClassPath(javaProject);
+        boolean failed = !result.getErrors().isEmpty();
+        try {
+            if (result.isEnhanced()) {
+                final long writeStart = System.nanoTime();
+                final Object writeEvent = EnhanceEvents.WRITE.begin();
+                // wraps the enhanced bytes without copying, setContents has no byte[] variant
+                final ByteArrayInputStream bais = new ByteArrayInputStream(result.getEnhancedBytes());
+                file.setContents(bais, true, false, monitor);
+                written.put(file, file.getModificationStamp());
+                EnhanceEvents.WRITE.commit(writeEvent, file.getProject().getName(), className, 0, result.getEnhancedBytes().length, "written");
+                stats.written(result.getEnhancedBytes().length, System.nanoTime() - writeStart);
+                if (session.getConfig().getDebugLevel() >= 1) {
+                    EnhancerPlugin.logInfo("enhanced: " + className);
+                }
+            }
+        }
+        catch (final CoreException e) {
+            failed = true;
+            EnhancerPlugin.logError("Error during enhancement", e);
+            reportProblem(session, result, findMarkerTarget(session, result), e);
+        }
+        if (failed) {
+            stats.failed();
+        }
 
-        return UrlPathHelper.convertToUrl(ideClassPath);
+        // report all errors in SourceFile
+        if (!result.getErrors().isEmpty()) {
+            final IResource target = findMarkerTarget(session, result);
+            for (final Throwable t : result.getErrors()) {
+                reportProblem(session, result, target, t);
+            }
+        }
     }
 
-    private byte[] readBytes(final InputStream in) throws IOException
+    private IResource findMarkerTarget(final EnhanceSession session, final EnhanceResult result)
     {
-
-        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
-        final BufferedInputStream bi = new BufferedInputStream(in);
-
-        int len = -1;
-        final byte[] buf = new byte[1024];
-
-        while ((len = bi.read(buf)) > -1) {
-            baos.write(buf, 0, len);
+        final IProject project = result.getFile().getProject();
+        if (result.getClassName() != null) {
+            final long start = System.nanoTime();
+            final Object event = EnhanceEvents.SOURCE_LOOKUP.begin();
+            if (sourceLocator == null) {
+                sourceLocator = new SourceLocator(project);
+            }
+            final IFile sourceFile = sourceLocator.find(result.getClassName(), result.getSourceFile());
+            EnhanceEvents.SOURCE_LOOKUP.commit(event, project.getName(), result.getClassName(), 0, 0, (sourceFile == null) ? "not found" : "found");
+            session.getStats().sourceLookedUp(System.nanoTime() - start);
+            if (sourceFile != null) {
+                return sourceFile;
+            }
         }
-
-        return baos.toByteArray();
+        return project;
     }
 
-    private static class DetermineClass
+    private static void reportProblem(final EnhanceSession session, final EnhanceResult result, final IResource target, final Throwable t)
     {
-        private DetermineClass()
-        {
+        session.getProblems().report(result.getFile(), target, "Error during enhancement: " + t.getMessage());
+    }
 
+    /**
+     * Bring the problem markers in line with the problems of the processed
+     * class files, inside the build's workspace operation.
+     */
+    private void updateMarkers(final EnhanceSession session, final boolean complete)
+    {
+        final Object event = EnhanceEvents.MARKER.begin();
+        int[] counts = null;
+        try {
+            counts = session.getProblems().apply(complete);
         }
+        catch (final CoreException e) {
+            EnhancerPlugin.logError("Error updating enhancement markers", e);
+        }
+        finally {
+            EnhanceEvents.MARKER.commit(event, getProject().getName(), null, (counts == null) ? 0 : counts[0],
+                    (counts == null) ? 0 : counts[1], (counts == null) ? "failed" : "updated");
+        }
+    }
 
-        static String getClassName(final byte[] classBytes)
-        {
-            final ClassReader cr = new ClassReader(classBytes);
-            final DetermineClassVisitor cv = new DetermineClassVisitor();
-            try {
-                cr.accept(cv, ClassReader.SKIP_CODE + ClassReader.SKIP_DEBUG + ClassReader.SKIP_FRAMES);
-
-                // should not get to here...
-                throw new RuntimeException("Expected DetermineClassVisitor to throw GotClassName?");
-
-            }
-            catch (final GotClassName e) {
-                EnhancerPlugin.logError("Error in getClassName", e);
-                // used to skip reading the rest of the class bytes...
-                return e.getClassName();
+    private void fullBuild(final EnhanceSession session, final EnhanceScope scope, final IProgressMonitor monitor)
+    {
+        if (deferredJob != null) {
+            deferredJob.clear();
+        }
+        session.getStats().setKind("full");
+        index.beginFullBuild();
+        boolean completed = false;
+        try {
+            final ClassFileCollector collector = new ClassFileCollector(scope);
+            for (final IContainer output : scope.getOutputContainers()) {
+                output.accept(collector);
             }
+            enhanceAll(session, scope, collector.files, session.getConfig().getParallelism(), true, monitor);
+            completed = true;
+        }
+        catch (final CoreException e) {
+            EnhancerPlugin.logError("Error with fullBuild", e);
+        }
+        finally {
+            // only a completed build has seen every class file
+            index.endFullBuild(completed);
         }
+    }
 
-        private static class DetermineClassVisitor extends ClassVisitor
-        {
-            public DetermineClassVisitor()
-            {
-                super(Opcodes.ASM5);
-            }
+    /**
+     * Enhance the given class files reporting one unit of work per class,
+     * stopping between classes when the build is canceled.
+     * <p>
+     * All writes and marker changes happen in one workspace operation, so
+     * listeners see a single delta for them.
+     *
+     * @param complete
+     *            true if the files are all class files in scope, markers of
+     *            any others are then deleted
+     * @throws OperationCanceledException
+     *             if the build was canceled
+     */
+    private void enhanceAll(final EnhanceSession session, final EnhanceScope scope, final List<IFile> files, final int parallelism,
+            final boolean complete, final IProgressMonitor monitor)
+    {
+        if (files.isEmpty() && !complete && session.getProblems().isEmpty()) {
+            return;
+        }
 
+        final IWorkspaceRunnable action = new IWorkspaceRunnable()
+        {
             @Override
-            public void visit(final int version, final int access, final String name, final String signature, final String superName, final String[] interfaces)
+            public void run(final IProgressMonitor runMonitor)
             {
-                throw new GotClassName(name);
+                final SubMonitor progress = SubMonitor.convert(runMonitor, "Ebean enhancement of " + getProject().getName(), files.size());
+                if ((parallelism <= 1) || (files.size() == 1)) {
+                    for (final IFile file : files) {
+                        if (progress.isCanceled()) {
+                            throw new OperationCanceledException();
+                        }
+                        apply(session, enhance(session, file), progress.newChild(1));
+                    }
+                } else {
+                    parallelBuild(session, files, parallelism, progress);
+                }
+                updateMarkers(session, complete);
             }
-        }
+        };
 
-        private static class GotClassName extends RuntimeException
-        {
-            private static final long serialVersionUID = 2869058158272107957L;
+        try {
+            getProject().getWorkspace().run(action, scope.getOutputRule(), IWorkspace.AVOID_UPDATE, monitor);
+        }
+        catch (final CoreException e) {
+            EnhancerPlugin.logError("Error during enhancement", e);
+        }
+    }
 
-            final String className;
+    private void parallelBuild(final EnhanceSession session, final List<IFile> files, final int parallelism, final SubMonitor progress)
+    {
+        if (session.getConfig().getDebugLevel() >= 2) {
+            EnhancerPlugin.logInfo("... enhancing " + files.size() + " classes using " + parallelism + " threads");
+        }
 
-            public GotClassName(final String className)
+        try {
+            new ParallelRunner(parallelism).run(ParallelRunner.of(files), new ParallelRunner.Task<IFile, EnhanceResult>()
             {
-                super(className);
-                this.className = className.replace('/', '.');
-            }
+                @Override
+                public EnhanceResult process(final IFile file)
+                {
+                    return enhance(session, file);
+                }
 
-            public String getClassName()
-            {
-                return className;
-            }
-        }
+                @Override
+                public void complete(final IFile file, final EnhanceResult result)
+                {
+                    apply(session, result, progress.newChild(1));
+                }
+
+                @Override
+                public void failed(final IFile file, final Exception failure)
+                {
+                    EnhancerPlugin.logError("Error during enhancement of " + file.getFullPath(), failure);
+                    progress.worked(1);
+                }
 
+                @Override
+                public boolean isCanceled()
+                {
+                    return progress.isCanceled();
+                }
+            });
+        }
+        catch (final CancellationException e) {
+            throw new OperationCanceledException();
+        }
+        catch (final IOException e) {
+            // the file list source does no I/O
+            throw new IllegalStateException(e);
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            EnhancerPlugin.logError("Interrupted during fullBuild", e);
+        }
     }
 
+    /**
+     * Collects the changed class files, dropping removed ones from the index.
+     */
     private class DeltaVisitor implements IResourceDeltaVisitor
     {
-        private final IProgressMonitor monitor;
+        private final EnhanceScope scope;
+
+        private final List<IFile> files = new ArrayList<>();
+
+        private final List<IFile> removed = new ArrayList<>();
+
+        private int ownWrites;
 
-        private DeltaVisitor(final IProgressMonitor monitor)
+        private DeltaVisitor(final EnhanceScope scope)
         {
-            this.monitor = monitor;
+            this.scope = scope;
         }
 
         @Override
         public boolean visit(final IResourceDelta delta) throws CoreException
         {
             final IResource resource = delta.getResource();
+            if ((delta.getKind() != IResourceDelta.REMOVED) && !scope.includes(resource)) {
+                return false;
+            }
             switch (delta.getKind())
             {
                 case IResourceDelta.ADDED:
                 case IResourceDelta.CHANGED:
                 {
-                    checkResource(resource, monitor);
+                    if (isClassFile(resource)) {
+                        if (isOwnWrite((IFile) resource)) {
+                            ownWrites++;
+                        } else {
+                            files.add((IFile) resource);
+                        }
+                    }
                     break;
                 }
                 case IResourceDelta.REMOVED:
+                {
+                    if (isClassFile(resource)) {
+                        written.remove(resource);
+                        index.remove((IFile) resource);
+                        removed.add((IFile) resource);
+                    }
+                    break;
+                }
                 default:
                 {
                     break;
@@ -301,21 +733,67 @@ public final class EnhanceBuilder extends IncrementalProjectBuilder
             // return true to continue visiting children.
             return true;
         }
+
+        private void logOwnWrites(final EnhancerConfig config)
+        {
+            if ((config.getDebugLevel() >= 2) && (ownWrites > 0)) {
+                EnhancerPlugin.logInfo("... skipped " + ownWrites + " classes written by enhancement");
+            }
+        }
     }
 
-    private class ResourceVisitor implements IResourceVisitor
+    /**
+     * Collects the internal names of the changed classes of an upstream
+     * project.
+     */
+    private static class UpstreamVisitor implements IResourceDeltaVisitor
     {
-        private final IProgressMonitor monitor;
+        private final EnhanceScope scope;
 
-        private ResourceVisitor(final IProgressMonitor monitor)
+        private final Set<String> classNames = new HashSet<>();
+
+        private UpstreamVisitor(final EnhanceScope scope)
         {
-            this.monitor = monitor;
+            this.scope = scope;
         }
 
         @Override
-        public boolean visit(final IResource resource) throws CoreException
+        public boolean visit(final IResourceDelta delta)
         {
-            checkResource(resource, monitor);
+            final IResource resource = delta.getResource();
+            if (!scope.includes(resource)) {
+                return false;
+            }
+            if (isClassFile(resource)) {
+                final String className = scope.getClassName((IFile) resource);
+                if (className != null) {
+                    classNames.add(className);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class ClassFileCollector implements IResourceVisitor
+    {
+        private final EnhanceScope scope;
+
+        private final List<IFile> files = new ArrayList<>();
+
+        private ClassFileCollector(final EnhanceScope scope)
+        {
+            this.scope = scope;
+        }
+
+        @Override
+        public boolean visit(final IResource resource)
+        {
+            if (!scope.includes(resource)) {
+                return false;
+            }
+            if (isClassFile(resource)) {
+                files.add((IFile) resource);
+            }
             return true;
         }
     }
@@ -0,0 +1,317 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * JDK Flight Recorder events of the enhancement phases, in the category
+ * "Ebean / Enhancer".
+ * <p>
+ * The plugin runs on Java 7, so the event types are defined at runtime with
+ * <code>jdk.jfr.EventFactory</code> (Java 12 and later) through reflection. A
+ * recorder listener tracks whether any recording runs, until one does
+ * {@link EventType#begin()} only reads a volatile flag and returns null, which
+ * {@link EventType#commit(Object, String, String, long, long, String)} ignores.
+ * <p>
+ * All events have a project, class name and outcome, left empty where they do
+ * not apply, and two numbers named by their type: bytes in and out unless the
+ * type counts something else.
+ */
+final class EnhanceEvents
+{
+    static final EventType BUILD = new EventType("Build", "Enhancement Build", "A build of the Ebean enhancement builder");
+
+    static final EventType CLASSPATH = new EventType("ClasspathResolution", "Classpath Resolution",
+            "Resolving (or reusing) the runtime classpath of a project", "Entries", "Jars");
+
+    static final EventType CLASSLOADER = new EventType("ClassLoaderCreation", "Classloader Creation",
+            "Creating the classloader of the jars of a classpath (library) or of its folders for one build (build)", "Jars",
+            "Folders");
+
+    static final EventType CLASSPATH_INDEX = new EventType("ClasspathIndex", "Classpath Index",
+            "Reading (or building) the package index of a classpath", "Jars", "Packages");
+
+    static final EventType READ = new EventType("ClassRead", "Class Read", "Reading a class file from the workspace");
+
+    static final EventType PRE_SCAN = new EventType("PreScan", "Pre-scan",
+            "Checking the constant pool of a class for anything the transformers look for");
+
+    static final EventType TRANSFORM = new EventType("Transform", "Transform", "Running the entity and query bean transformers on a class");
+
+    static final EventType SOURCE_LOOKUP = new EventType("SourceLookup", "Source Lookup", "Finding the source file of a class for its markers");
+
+    static final EventType WRITE = new EventType("Write", "Write", "Writing an enhanced class file to the workspace");
+
+    static final EventType MARKER = new EventType("MarkerUpdate", "Marker Update", "Updating the enhancement problem markers of a build",
+            "Created", "Deleted");
+
+    private EnhanceEvents()
+    {
+    }
+
+    /**
+     * One event type.
+     */
+    static final class EventType
+    {
+        private final Object factory;
+
+        private EventType(final String name, final String label, final String description)
+        {
+            this(name, label, description, "Bytes In", "Bytes Out");
+        }
+
+        private EventType(final String name, final String label, final String description, final String inLabel,
+                final String outLabel)
+        {
+            this.factory = Jfr.createFactory("io.ebean.enhancer." + name, label, description, inLabel, outLabel);
+        }
+
+        /**
+         * Start timing an event, returning null if no recording runs.
+         */
+        Object begin()
+        {
+            if (!Jfr.recording || (factory == null)) {
+                return null;
+            }
+            return Jfr.begin(factory);
+        }
+
+        /**
+         * End and commit an event started by {@link #begin()}, doing nothing
+         * for null. The two numbers go to the fields named by the type.
+         */
+        void commit(final Object event, final String project, final String className, final long in, final long out,
+                final String outcome)
+        {
+            if (event != null) {
+                Jfr.commit(event, project, className, in, out, outcome);
+            }
+        }
+    }
+
+    /**
+     * The reflective access to the recorder, disabled for good on the first
+     * failure.
+     */
+    private static final class Jfr
+    {
+        private static final ClassLoader LOADER = ClassLoader.getSystemClassLoader();
+
+        private static volatile boolean available;
+
+        private static volatile boolean recording;
+
+        /**
+         * The running recordings, by identity.
+         */
+        private static final Set<Object> running = Collections.newSetFromMap(new IdentityHashMap<Object, Boolean>());
+
+        private static Method createFactory;
+
+        private static Method newEvent;
+
+        private static Method begin;
+
+        private static Method end;
+
+        private static Method commit;
+
+        private static Method set;
+
+        private static Constructor<?> annotationElement;
+
+        private static Constructor<?> valueDescriptor;
+
+        private static Class<?> nameType;
+
+        private static Class<?> labelType;
+
+        private static Class<?> descriptionType;
+
+        private static Class<?> categoryType;
+
+        private static Class<?> stackTraceType;
+
+        static {
+            try {
+                final Class<?> eventFactory = Class.forName("jdk.jfr.EventFactory", false, LOADER);
+                final Class<?> event = Class.forName("jdk.jfr.Event", false, LOADER);
+                createFactory = eventFactory.getMethod("create", List.class, List.class);
+                newEvent = eventFactory.getMethod("newEvent");
+                begin = event.getMethod("begin");
+                end = event.getMethod("end");
+                commit = event.getMethod("commit");
+                set = event.getMethod("set", int.class, Object.class);
+
+                annotationElement = Class.forName("jdk.jfr.AnnotationElement", false, LOADER).getConstructor(Class.class, Object.class);
+                valueDescriptor = Class.forName("jdk.jfr.ValueDescriptor", false, LOADER).getConstructor(Class.class, String.class,
+                        List.class);
+                nameType = Class.forName("jdk.jfr.Name", false, LOADER);
+                labelType = Class.forName("jdk.jfr.Label", false, LOADER);
+                descriptionType = Class.forName("jdk.jfr.Description", false, LOADER);
+                categoryType = Class.forName("jdk.jfr.Category", false, LOADER);
+                stackTraceType = Class.forName("jdk.jfr.StackTrace", false, LOADER);
+
+                available = true;
+                listen();
+            }
+            catch (final ClassNotFoundException e) {
+                // no flight recorder, or one without EventFactory
+            }
+            catch (final ReflectiveOperationException | RuntimeException e) {
+                available = false;
+                EnhancerPlugin.logError("Error connecting to the flight recorder", new Exception(e));
+            }
+        }
+
+        /**
+         * Register a listener keeping {@link #recording} up to date.
+         */
+        private static void listen() throws ReflectiveOperationException
+        {
+            final Class<?> flightRecorder = Class.forName("jdk.jfr.FlightRecorder", false, LOADER);
+            final Class<?> listenerType = Class.forName("jdk.jfr.FlightRecorderListener", false, LOADER);
+            final Class<?> recordingType = Class.forName("jdk.jfr.Recording", false, LOADER);
+            final Method getState = recordingType.getMethod("getState");
+
+            final Object listener = Proxy.newProxyInstance(LOADER, new Class<?>[] { listenerType }, new InvocationHandler()
+            {
+                @Override
+                public Object invoke(final Object proxy, final Method method, final Object[] args) throws Throwable
+                {
+                    if ("recordingStateChanged".equals(method.getName())) {
+                        update(args[0], String.valueOf(getState.invoke(args[0])));
+                        return null;
+                    }
+                    if ("equals".equals(method.getName())) {
+                        return proxy == args[0];
+                    }
+                    if ("hashCode".equals(method.getName())) {
+                        return System.identityHashCode(proxy);
+                    }
+                    if ("toString".equals(method.getName())) {
+                        return "Ebean enhancer recording listener";
+                    }
+                    return null;
+                }
+            });
+            flightRecorder.getMethod("addListener", listenerType).invoke(null, listener);
+
+            // recordings started before the plugin
+            if ((Boolean) flightRecorder.getMethod("isInitialized").invoke(null)) {
+                final Object recorder = flightRecorder.getMethod("getFlightRecorder").invoke(null);
+                for (final Object recording : (List<?>) flightRecorder.getMethod("getRecordings").invoke(recorder)) {
+                    update(recording, String.valueOf(getState.invoke(recording)));
+                }
+            }
+        }
+
+        private static void update(final Object changed, final String state)
+        {
+            synchronized (running) {
+                if ("RUNNING".equals(state)) {
+                    running.add(changed);
+                } else {
+                    running.remove(changed);
+                }
+                recording = available && !running.isEmpty();
+            }
+        }
+
+        private static Object createFactory(final String name, final String label, final String description, final String inLabel,
+                final String outLabel)
+        {
+            if (!available) {
+                return null;
+            }
+            try {
+                final List<Object> annotations = new ArrayList<>();
+                annotations.add(annotationElement.newInstance(nameType, name));
+                annotations.add(annotationElement.newInstance(labelType, label));
+                annotations.add(annotationElement.newInstance(descriptionType, description));
+                annotations.add(annotationElement.newInstance(categoryType, new String[] { "Ebean", "Enhancer" }));
+                annotations.add(annotationElement.newInstance(stackTraceType, Boolean.FALSE));
+
+                final List<Object> fields = Arrays.asList(
+                        field(String.class, "project", "Project"),
+                        field(String.class, "className", "Class Name"),
+                        field(long.class, fieldName(inLabel), inLabel),
+                        field(long.class, fieldName(outLabel), outLabel),
+                        field(String.class, "outcome", "Outcome"));
+                return createFactory.invoke(null, annotations, fields);
+            }
+            catch (final ReflectiveOperationException | RuntimeException e) {
+                disable(e);
+                return null;
+            }
+        }
+
+        private static Object field(final Class<?> type, final String name, final String label) throws ReflectiveOperationException
+        {
+            return valueDescriptor.newInstance(type, name, Collections.singletonList(annotationElement.newInstance(labelType, label)));
+        }
+
+        /**
+         * Return the field name for a label, "Bytes In" becomes "bytesIn".
+         */
+        private static String fieldName(final String label)
+        {
+            final String name = label.replace(" ", "");
+            return Character.toLowerCase(name.charAt(0)) + name.substring(1);
+        }
+
+        private static Object begin(final Object factory)
+        {
+            if (!available) {
+                return null;
+            }
+            try {
+                final Object event = newEvent.invoke(factory);
+                begin.invoke(event);
+                return event;
+            }
+            catch (final ReflectiveOperationException | RuntimeException e) {
+                disable(e);
+                return null;
+            }
+        }
+
+        private static void commit(final Object event, final String project, final String className, final long in,
+                final long out, final String outcome)
+        {
+            try {
+                end.invoke(event);
+                set.invoke(event, 0, project);
+                set.invoke(event, 1, className);
+                set.invoke(event, 2, in);
+                set.invoke(event, 3, out);
+                set.invoke(event, 4, outcome);
+                commit.invoke(event);
+            }
+            catch (final ReflectiveOperationException | RuntimeException e) {
+                disable(e);
+            }
+        }
+
+        private static void disable(final Exception e)
+        {
+            if (available) {
+                available = false;
+                recording = false;
+                EnhancerPlugin.logError("Error emitting flight recorder events, they are disabled", new Exception(e));
+            }
+        }
+    }
+}
@@ -10,7 +10,11 @@ import org.eclipse.core.resources.IProjectDescription;
 import org.eclipse.core.resources.IProjectNature;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
-import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.IStatus;
+import org.eclipse.core.runtime.OperationCanceledException;
+import org.eclipse.core.runtime.Status;
+import org.eclipse.core.runtime.jobs.Job;
 
 import io.ebean.eclipse.internal.enhancer.EnhancerConstants;
 import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
@@ -49,6 +53,7 @@ public final class EnhanceNature implements IProjectNature
     public void deconfigure() throws CoreException
     {
         toggleBuilder(false, "... Enhancement disabled!!!");
+        ProblemMarkers.clear(project);
     }
 
     @Override
@@ -101,15 +106,41 @@ public final class EnhanceNature implements IProjectNature
         desc.setBuildSpec(toggleBuilder(desc, enable));
         project.setDescription(desc, null);
 
-        // TOOD: add warning on full build and/or allow specifing classpath /
-        // better monitor
-        project.build(IncrementalProjectBuilder.FULL_BUILD, new NullProgressMonitor());
+        // TOOD: add warning on full build and/or allow specifing classpath
+        scheduleFullBuild(project);
 
         if (EnhancerPlugin.getDebugLevel() >= 1) {
             EnhancerPlugin.logInfo(message);
         }
     }
 
+    /**
+     * Run the full build in a job so it shows progress and can be canceled.
+     */
+    private static void scheduleFullBuild(final IProject project)
+    {
+        final Job job = new Job("Ebean enhancement of " + project.getName())
+        {
+            @Override
+            protected IStatus run(final IProgressMonitor monitor)
+            {
+                try {
+                    project.build(IncrementalProjectBuilder.FULL_BUILD, monitor);
+                    return Status.OK_STATUS;
+                }
+                catch (final OperationCanceledException e) {
+                    return Status.CANCEL_STATUS;
+                }
+                catch (final CoreException e) {
+                    return e.getStatus();
+                }
+            }
+        };
+        job.setRule(project.getWorkspace().getRuleFactory().buildRule());
+        job.setUser(true);
+        job.schedule();
+    }
+
     private ICommand[] toggleBuilder(final IProjectDescription desc, final boolean enable)
     {
         final List<ICommand> list = toggle(desc.getBuildSpec(), EnhancerConstants.BUILDER_ID, enable, new ICallback<ICommand>()
@@ -0,0 +1,218 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.jar.Attributes;
+import java.util.jar.Manifest;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.resources.ProjectScope;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.preferences.IEclipsePreferences;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceOptions;
+import io.ebean.eclipse.internal.enhancer.engine.PackageNames;
+
+/**
+ * The packages enhancement is restricted to, read from the project's
+ * <code>META-INF/ebean.mf</code> or from the project preferences of this
+ * plugin, which use the same keys and take precedence.
+ * <p>
+ * With no packages configured every class is a candidate, as before. The
+ * agents treat a category without packages as covering all of them, so the
+ * walk is only restricted when both the entity (or transactional) and the
+ * query bean packages are configured.
+ */
+final class EnhancePackages
+{
+    static final String ENTITY_PACKAGES = "entity-packages";
+
+    static final String TRANSACTIONAL_PACKAGES = "transactional-packages";
+
+    static final String QUERYBEAN_PACKAGES = "querybean-packages";
+
+    /**
+     * The single attribute used by older ebean.mf files.
+     */
+    static final String PACKAGES = "packages";
+
+    private static final String MANIFEST = "META-INF/ebean.mf";
+
+    private final Set<String> entityPackages;
+
+    private final Set<String> transactionalPackages;
+
+    private final Set<String> queryBeanPackages;
+
+    /**
+     * All packages in internal form with a trailing slash, empty if any class
+     * may need enhancement.
+     */
+    private final String[] paths;
+
+    private EnhancePackages(final Set<String> entityPackages, final Set<String> transactionalPackages, final Set<String> queryBeanPackages)
+    {
+        this.entityPackages = entityPackages;
+        this.transactionalPackages = transactionalPackages;
+        this.queryBeanPackages = queryBeanPackages;
+
+        final Set<String> all = new TreeSet<>();
+        if ((entityPackages.isEmpty() && transactionalPackages.isEmpty()) || queryBeanPackages.isEmpty()) {
+            // one of the agents looks at every package
+            this.paths = new String[0];
+            return;
+        }
+        for (final String pkg : entityPackages) {
+            all.add(pkg.replace('.', '/') + '/');
+        }
+        for (final String pkg : transactionalPackages) {
+            all.add(pkg.replace('.', '/') + '/');
+        }
+        for (final String pkg : queryBeanPackages) {
+            all.add(pkg.replace('.', '/') + '/');
+        }
+        this.paths = all.toArray(new String[all.size()]);
+    }
+
+    /**
+     * Read the packages configured for the given project.
+     */
+    static EnhancePackages read(final IProject project)
+    {
+        final Set<String> entity = new TreeSet<>();
+        final Set<String> transactional = new TreeSet<>();
+        final Set<String> queryBean = new TreeSet<>();
+
+        final Attributes attributes = readManifest(project);
+        if (attributes != null) {
+            PackageNames.parse(attributes.getValue(ENTITY_PACKAGES), entity);
+            PackageNames.parse(attributes.getValue(PACKAGES), entity);
+            PackageNames.parse(attributes.getValue(TRANSACTIONAL_PACKAGES), transactional);
+            PackageNames.parse(attributes.getValue(QUERYBEAN_PACKAGES), queryBean);
+        }
+
+        final IEclipsePreferences preferences = new ProjectScope(project).getNode(EnhancerPlugin.PLUGIN_ID);
+        PackageNames.override(preferences.get(ENTITY_PACKAGES, null), entity);
+        PackageNames.override(preferences.get(TRANSACTIONAL_PACKAGES, null), transactional);
+        PackageNames.override(preferences.get(QUERYBEAN_PACKAGES, null), queryBean);
+
+        return new EnhancePackages(entity, transactional, queryBean);
+    }
+
+    /**
+     * Return true if enhancement is restricted to some packages, that is both
+     * agents are.
+     */
+    boolean isRestricted()
+    {
+        return paths.length > 0;
+    }
+
+    /**
+     * Return true if the class with the given internal name is in one of the
+     * packages.
+     */
+    boolean includesClass(final String internalName)
+    {
+        if (!isRestricted()) {
+            return true;
+        }
+        for (final String path : paths) {
+            if (internalName.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Return true if the package with the given internal name (without
+     * trailing slash) is in, or contains, one of the packages.
+     */
+    boolean includesPackage(final String packagePath)
+    {
+        if (!isRestricted() || packagePath.isEmpty()) {
+            return true;
+        }
+        final String folder = packagePath + '/';
+        for (final String path : paths) {
+            if (path.startsWith(folder) || folder.startsWith(path)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The packages to give the entity transformer, null for no restriction.
+     */
+    Set<String> getEntityPackages()
+    {
+        if (entityPackages.isEmpty() && transactionalPackages.isEmpty()) {
+            return null;
+        }
+        final Set<String> packages = new TreeSet<>(entityPackages);
+        packages.addAll(transactionalPackages);
+        return packages;
+    }
+
+    /**
+     * The packages holding entities (and so query beans), null if not
+     * configured.
+     */
+    Set<String> getQueryBeanDomainPackages()
+    {
+        return entityPackages.isEmpty() ? null : Collections.unmodifiableSet(entityPackages);
+    }
+
+    /**
+     * The agent options for these packages.
+     */
+    EnhanceOptions toOptions(final int enhanceDebugLevel)
+    {
+        return new EnhanceOptions(enhanceDebugLevel, getEntityPackages(), getQueryBeanDomainPackages(), queryBeanPackages);
+    }
+
+    @Override
+    public String toString()
+    {
+        return "entity" + entityPackages + " transactional" + transactionalPackages + " querybean" + queryBeanPackages;
+    }
+
+    private static Attributes readManifest(final IProject project)
+    {
+        final IJavaProject javaProject = JavaCore.create(project);
+        if (!javaProject.exists()) {
+            return null;
+        }
+
+        try {
+            final IWorkspaceRoot root = project.getWorkspace().getRoot();
+            for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+                if (entry.getEntryKind() != IClasspathEntry.CPE_SOURCE) {
+                    continue;
+                }
+                final IResource manifest = root.findMember(entry.getPath().append(MANIFEST));
+                if (manifest instanceof IFile) {
+                    try (InputStream is = ((IFile) manifest).getContents()) {
+                        return new Manifest(is).getMainAttributes();
+                    }
+                }
+            }
+        }
+        catch (final CoreException | IOException e) {
+            EnhancerPlugin.logError("Error reading " + MANIFEST + " of " + project.getName(), e);
+        }
+        return null;
+    }
+}
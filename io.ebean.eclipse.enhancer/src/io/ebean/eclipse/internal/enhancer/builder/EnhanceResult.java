@@ -0,0 +1,119 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
+
+/**
+ * The outcome of enhancing one class file, applied to the workspace by the
+ * builder thread.
+ */
+final class EnhanceResult
+{
+    private final IFile file;
+
+    private final String className;
+
+    private final String sourceFile;
+
+    private final byte[] enhancedBytes;
+
+    private final List<Throwable> errors;
+
+    private final Exception failure;
+
+    private final boolean unreadable;
+
+    private EnhanceResult(final IFile file, final String className, final String sourceFile, final byte[] enhancedBytes,
+            final List<Throwable> errors, final Exception failure, final boolean unreadable)
+    {
+        this.file = file;
+        this.className = className;
+        this.sourceFile = sourceFile;
+        this.enhancedBytes = enhancedBytes;
+        this.errors = errors;
+        this.failure = failure;
+        this.unreadable = unreadable;
+    }
+
+    static EnhanceResult transformed(final IFile file, final String className, final String sourceFile, final byte[] enhancedBytes,
+            final List<Throwable> errors)
+    {
+        return new EnhanceResult(file, className, sourceFile, enhancedBytes, errors, null, false);
+    }
+
+    static EnhanceResult failed(final IFile file, final String className, final String sourceFile, final Exception failure)
+    {
+        return new EnhanceResult(file, className, sourceFile, null, Collections.<Throwable> emptyList(), failure, false);
+    }
+
+    static EnhanceResult skipped(final IFile file)
+    {
+        return new EnhanceResult(file, null, null, null, Collections.<Throwable> emptyList(), null, false);
+    }
+
+    /**
+     * The class file could not be read, what is known about it is kept.
+     */
+    static EnhanceResult unreadable(final IFile file)
+    {
+        return new EnhanceResult(file, null, null, null, Collections.<Throwable> emptyList(), null, true);
+    }
+
+    IFile getFile()
+    {
+        return file;
+    }
+
+    /**
+     * The class name, null when the class file could not be read.
+     */
+    String getClassName()
+    {
+        return className;
+    }
+
+    /**
+     * The source file name from the class file, only read when there are
+     * errors to report and null if not known.
+     */
+    String getSourceFile()
+    {
+        return sourceFile;
+    }
+
+    boolean isEnhanced()
+    {
+        return enhancedBytes != null;
+    }
+
+    byte[] getEnhancedBytes()
+    {
+        return enhancedBytes;
+    }
+
+    /**
+     * The unexpected exceptions reported by the transformers.
+     */
+    List<Throwable> getErrors()
+    {
+        return errors;
+    }
+
+    /**
+     * True if the class file could not be read.
+     */
+    boolean isUnreadable()
+    {
+        return unreadable;
+    }
+
+    /**
+     * The exception that stopped the enhancement, null if there was none.
+     */
+    Exception getFailure()
+    {
+        return failure;
+    }
+}
@@ -0,0 +1,219 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.MultiRule;
+import org.eclipse.jdt.core.IClasspathAttribute;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerConfig;
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * Decides which resources of a project a build looks at.
+ * <p>
+ * Only the JDT output folders are visited, optionally leaving out those of test
+ * source folders. Class files are mapped to their package through the output
+ * folder they live in, so folders outside the configured
+ * {@link EnhancePackages} are not descended into either.
+ */
+final class EnhanceScope
+{
+    /**
+     * The classpath attribute marking test source folders in newer JDT
+     * versions.
+     */
+    private static final String TEST_ATTRIBUTE = "test";
+
+    private static final String TEST_OUTPUT_NAME = "test-classes";
+
+    private final IProject project;
+
+    private final EnhancePackages packages;
+
+    private final IPath[] outputLocations;
+
+    private EnhanceScope(final IProject project, final EnhancePackages packages, final IPath[] outputLocations)
+    {
+        this.project = project;
+        this.packages = packages;
+        this.outputLocations = outputLocations;
+    }
+
+    static EnhanceScope create(final IProject project, final EnhancerConfig config)
+    {
+        final IPath[] outputLocations = readOutputLocations(project, config);
+        return new EnhanceScope(project, EnhancePackages.read(project), outputLocations);
+    }
+
+    EnhancePackages getPackages()
+    {
+        return packages;
+    }
+
+    /**
+     * Return the existing output folders to visit on a full build.
+     */
+    List<IContainer> getOutputContainers()
+    {
+        final IWorkspaceRoot root = project.getWorkspace().getRoot();
+        final List<IContainer> containers = new ArrayList<>();
+        for (final IPath output : outputLocations) {
+            final IContainer container = (output.segmentCount() == 1) ? root.getProject(output.segment(0)) : root.getFolder(output);
+            if (container.exists()) {
+                containers.add(container);
+            }
+        }
+        return containers;
+    }
+
+    /**
+     * Return the internal name of the class in the given class file, null if
+     * the file is not in an output folder.
+     */
+    String getClassName(final IFile classFile)
+    {
+        final String packagePath = packagePath(classFile.getParent());
+        if (packagePath == null) {
+            return null;
+        }
+        final String name = classFile.getName().substring(0, classFile.getName().length() - ".class".length());
+        return packagePath.isEmpty() ? name : packagePath + '/' + name;
+    }
+
+    /**
+     * Return the scheduling rule covering the output folders, the only
+     * resources enhancement writes, or the project if it has none.
+     */
+    ISchedulingRule getOutputRule()
+    {
+        final List<IContainer> outputs = getOutputContainers();
+        if (outputs.isEmpty()) {
+            return project;
+        }
+        return MultiRule.combine(outputs.toArray(new ISchedulingRule[outputs.size()]));
+    }
+
+    /**
+     * Return true if the resource, or for a folder any of its members, may need
+     * enhancement.
+     */
+    boolean includes(final IResource resource)
+    {
+        switch (resource.getType())
+        {
+            case IResource.FOLDER:
+            {
+                final String packagePath = packagePath(resource);
+                if (packagePath == null) {
+                    return containsOutputLocation(resource);
+                }
+                return packages.includesPackage(packagePath);
+            }
+            case IResource.FILE:
+            {
+                final String packagePath = packagePath(resource.getParent());
+                if (packagePath == null) {
+                    return false;
+                }
+                return packages.includesClass(packagePath.isEmpty() ? resource.getName() : packagePath + '/' + resource.getName());
+            }
+            default:
+            {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * Return the package path of a resource in an output folder, null for
+     * resources outside the output folders.
+     */
+    private String packagePath(final IResource resource)
+    {
+        final IPath path = resource.getFullPath();
+        for (final IPath output : outputLocations) {
+            if (output.isPrefixOf(path)) {
+                return path.removeFirstSegments(output.segmentCount()).toString();
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public String toString()
+    {
+        return Arrays.toString(outputLocations) + ' ' + packages;
+    }
+
+    /**
+     * Return true if the folder is a parent of one of the output folders.
+     */
+    private boolean containsOutputLocation(final IResource resource)
+    {
+        final IPath path = resource.getFullPath();
+        for (final IPath output : outputLocations) {
+            if (path.isPrefixOf(output)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static IPath[] readOutputLocations(final IProject project, final EnhancerConfig config)
+    {
+        final IJavaProject javaProject = JavaCore.create(project);
+        if (!javaProject.exists()) {
+            return new IPath[0];
+        }
+
+        final Set<IPath> locations = new LinkedHashSet<>();
+        try {
+            locations.add(javaProject.getOutputLocation());
+            for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+                if ((entry.getEntryKind() != IClasspathEntry.CPE_SOURCE) || (entry.getOutputLocation() == null)) {
+                    continue;
+                }
+                if (config.isExcludeTestOutput() && isTestOutput(entry)) {
+                    if (config.getDebugLevel() >= 2) {
+                        EnhancerPlugin.logInfo("... skipping test output folder " + entry.getOutputLocation());
+                    }
+                    continue;
+                }
+                locations.add(entry.getOutputLocation());
+            }
+        }
+        catch (final JavaModelException e) {
+            EnhancerPlugin.logError("Error reading output locations of " + project.getName(), e);
+        }
+        return locations.toArray(new IPath[locations.size()]);
+    }
+
+    /**
+     * Return true if the source folder holds tests, either marked so by JDT or
+     * following the maven layout.
+     */
+    private static boolean isTestOutput(final IClasspathEntry entry)
+    {
+        for (final IClasspathAttribute attribute : entry.getExtraAttributes()) {
+            if (TEST_ATTRIBUTE.equals(attribute.getName()) && Boolean.parseBoolean(attribute.getValue())) {
+                return true;
+            }
+        }
+        return TEST_OUTPUT_NAME.equals(entry.getOutputLocation().lastSegment()) || entry.getPath().toString().contains("/src/test/");
+    }
+}
@@ -0,0 +1,220 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.IOException;
+import java.lang.instrument.IllegalClassFormatException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerConfig;
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+import io.ebean.eclipse.internal.enhancer.engine.ClassHeader;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine;
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+import io.ebean.enhance.agent.MessageOutput;
+
+/**
+ * The state shared by all class files enhanced during one build.
+ * <p>
+ * The {@link EnhanceEngine} is created lazily on the first class needing it so
+ * builds that touch no class files stay cheap. Its classpath and the
+ * classloader of its jars come from the {@link ClasspathCache} and outlive the
+ * session, as does the class metadata it reads. The classes of the output
+ * folders are loaded afresh by every session. A session may be used by several
+ * worker threads at once.
+ */
+final class EnhanceSession implements AutoCloseable
+{
+    private static final MessageOutput LOG = new MessageOutput()
+    {
+        @Override
+        public void println(final String msg)
+        {
+            EnhancerPlugin.logTransform(msg);
+        }
+    };
+
+    private final IProject project;
+
+    private final EnhancePackages packages;
+
+    private final EnhancerConfig config;
+
+    private final BuildStats stats;
+
+    private final ProblemMarkers problems;
+
+    private final WorkspaceClasses workspaceClasses;
+
+    private ClasspathCache.Entry classpathEntry;
+
+    private ClassLoader classLoader;
+
+    private volatile EnhanceEngine engine;
+
+    private volatile String fingerprint;
+
+    /**
+     * Allocation is only measured when debug logging asks for it.
+     */
+    private final boolean measuringAllocation;
+
+    private final AtomicLong allocated = new AtomicLong();
+
+    private final AtomicInteger measured = new AtomicInteger();
+
+    EnhanceSession(final IProject project, final EnhancePackages packages, final EnhancerConfig config,
+            final WorkspaceClasses workspaceClasses)
+    {
+        this.project = project;
+        this.packages = packages;
+        this.config = config;
+        this.workspaceClasses = workspaceClasses;
+        this.stats = new BuildStats(project.getName());
+        this.problems = new ProblemMarkers(project);
+        this.measuringAllocation = (config.getDebugLevel() >= 2) && AllocationMeter.isSupported();
+    }
+
+    /**
+     * The preferences this build runs with.
+     */
+    EnhancerConfig getConfig()
+    {
+        return config;
+    }
+
+    /**
+     * The statistics of this build.
+     */
+    BuildStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * The problems found by this build, applied to the markers at its end.
+     */
+    ProblemMarkers getProblems()
+    {
+        return problems;
+    }
+
+    /**
+     * The classes compiled in the output folders of this project and the
+     * projects it requires.
+     */
+    WorkspaceClasses getWorkspaceClasses()
+    {
+        return workspaceClasses;
+    }
+
+    /**
+     * Return the fingerprint of the packages, classpath and agents of this
+     * build, the results of the enhancement index hold as long as it is
+     * unchanged.
+     */
+    String getFingerprint() throws CoreException
+    {
+        engine();
+        return fingerprint;
+    }
+
+    /**
+     * Return true if either transformer could possibly enhance the class.
+     */
+    boolean isCandidate(final ClassHeader header) throws CoreException
+    {
+        return engine().isCandidate(header);
+    }
+
+    /**
+     * Return the number of classes filtered out by {@link #isCandidate(ClassHeader)}.
+     */
+    int getFilteredCount()
+    {
+        final EnhanceEngine current = engine;
+        return (current == null) ? 0 : current.getFilteredCount();
+    }
+
+    boolean isMeasuringAllocation()
+    {
+        return measuringAllocation;
+    }
+
+    /**
+     * Record the bytes allocated by reading and enhancing one class.
+     */
+    void recordAllocation(final long bytes)
+    {
+        allocated.addAndGet(bytes);
+        measured.incrementAndGet();
+    }
+
+    long getAllocatedBytes()
+    {
+        return allocated.get();
+    }
+
+    /**
+     * Return the number of enhanced classes included in
+     * {@link #getAllocatedBytes()}.
+     */
+    int getMeasuredCount()
+    {
+        return measured.get();
+    }
+
+    /**
+     * Enhance the given candidate class.
+     */
+    Outcome transform(final ClassHeader header, final byte[] classBytes) throws CoreException, IllegalClassFormatException
+    {
+        return engine().transform(header, classBytes);
+    }
+
+    @Override
+    public synchronized void close() throws IOException
+    {
+        // worker threads end with the build, the builder thread lives on
+        if (engine != null) {
+            engine.close();
+            engine = null;
+        }
+        classLoader = null;
+        if (classpathEntry != null) {
+            EnhancerPlugin.getClasspathCache().release(classpathEntry);
+            classpathEntry = null;
+        }
+    }
+
+    private EnhanceEngine engine() throws CoreException
+    {
+        EnhanceEngine current = engine;
+        if (current == null) {
+            synchronized (this) {
+                current = engine;
+                if (current == null) {
+                    final long start = System.nanoTime();
+                    final Object event = EnhanceEvents.CLASSPATH.begin();
+                    classpathEntry = EnhancerPlugin.getClasspathCache().acquire(project);
+                    EnhanceEvents.CLASSPATH.commit(event, project.getName(), null, classpathEntry.getClasspath().length,
+                            classpathEntry.getJarCount(), "acquired");
+                    stats.classpathResolved(System.nanoTime() - start);
+                    // the plugin version covers agents that declare none
+                    fingerprint = EnhancementIndex.fingerprint(packages.toString(), classpathEntry.getFingerprint(),
+                            EnhanceEngine.getAgentVersion(), EnhancerPlugin.getDefault().getBundle().getVersion().toString());
+                    final Object loaderEvent = EnhanceEvents.CLASSLOADER.begin();
+                    classLoader = classpathEntry.newClassLoader();
+                    EnhanceEvents.CLASSLOADER.commit(loaderEvent, project.getName(), null, classpathEntry.getJarCount(),
+                            classpathEntry.getClasspath().length - classpathEntry.getJarCount(), "build");
+                    current = new EnhanceEngine(classpathEntry.getClassBytesReader(), classLoader,
+                            packages.toOptions(config.getEnhanceDebugLevel()), LOG);
+                    engine = current;
+                }
+            }
+        }
+        return current;
+    }
+}
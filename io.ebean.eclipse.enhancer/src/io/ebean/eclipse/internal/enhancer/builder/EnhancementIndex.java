@@ -0,0 +1,392 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * Remembers, per class file of a project, the content hash of the bytes last
+ * given to the agent and of the bytes it produced, along with the workspace
+ * classes its enhancement depends on.
+ * <p>
+ * A class file whose content is the enhanced output we wrote, or the input of a
+ * class the agent did not enhance, does not need to go through the agent
+ * again. The index is kept in the plugin state location so it survives
+ * restarts, and is dropped by a clean build.
+ * <p>
+ * Those results only hold for the packages, classpath and agent they were
+ * produced with, so the index carries a fingerprint of them and starts over
+ * when a build runs with a different one.
+ */
+final class EnhancementIndex
+{
+    private static final int MAGIC = 0xEBEA0003;
+
+    private static final ThreadLocal<MessageDigest> DIGEST = new ThreadLocal<MessageDigest>()
+    {
+        @Override
+        protected MessageDigest initialValue()
+        {
+            try {
+                return MessageDigest.getInstance("MD5");
+            }
+            catch (final NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    };
+
+    private final File file;
+
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    /**
+     * The paths seen since {@link #beginFullBuild()}, null outside a full build.
+     */
+    private volatile Set<String> seen;
+
+    private volatile boolean dirty;
+
+    /**
+     * The fingerprint of the settings the entries were produced with, null if
+     * not known.
+     */
+    private volatile String fingerprint;
+
+    /**
+     * The scope of the last build, null if not known.
+     */
+    private volatile String scope;
+
+    private EnhancementIndex(final File file)
+    {
+        this.file = file;
+    }
+
+    /**
+     * Load the index of the given project from the plugin state location.
+     */
+    static EnhancementIndex load(final IProject project)
+    {
+        final File dir = EnhancerPlugin.getDefault().getStateLocation().append("index").toFile();
+        final EnhancementIndex index = new EnhancementIndex(new File(dir, project.getName() + ".idx"));
+        index.read();
+        return index;
+    }
+
+    /**
+     * Return the hash of the given class bytes.
+     */
+    static byte[] hash(final byte[] classBytes)
+    {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        return digest.digest(classBytes);
+    }
+
+    /**
+     * Return the scope of the last build, kept so a change made while the
+     * workbench was down is still noticed. Null if not known.
+     */
+    String getScope()
+    {
+        return scope;
+    }
+
+    void setScope(final String scope)
+    {
+        if (!scope.equals(this.scope)) {
+            this.scope = scope;
+            dirty = true;
+        }
+    }
+
+    /**
+     * Return the hex encoded hash of the given parts, for
+     * {@link #isUpToDate(IFile, byte[], String)}.
+     */
+    static String fingerprint(final String... parts)
+    {
+        final MessageDigest digest = DIGEST.get();
+        digest.reset();
+        for (final String part : parts) {
+            digest.update(String.valueOf(part).getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+        }
+        final StringBuilder sb = new StringBuilder();
+        for (final byte b : digest.digest()) {
+            sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Return true if the class file with the given content hash does not need
+     * to be enhanced.
+     *
+     * @param settings
+     *            the fingerprint of the packages, classpath and agent of the
+     *            build, all entries are dropped when it differs from the one
+     *            they were recorded with
+     */
+    boolean isUpToDate(final IFile classFile, final byte[] hash, final String settings)
+    {
+        if (!settings.equals(fingerprint)) {
+            reset(settings);
+        }
+
+        final String key = key(classFile);
+        final Set<String> current = seen;
+        if (current != null) {
+            current.add(key);
+        }
+
+        final Entry entry = entries.get(key);
+        if (entry == null) {
+            return false;
+        }
+        return Arrays.equals(hash, entry.output) || (!entry.enhanced && Arrays.equals(hash, entry.input));
+    }
+
+    /**
+     * Record the result of running the agent on a class file, the output hash
+     * is null when the agent did not enhance it.
+     *
+     * @param references
+     *            the internal names of the classes the result depends on
+     */
+    void record(final IFile classFile, final byte[] inputHash, final byte[] outputHash, final String[] references)
+    {
+        entries.put(key(classFile), new Entry(inputHash, outputHash, references));
+        dirty = true;
+    }
+
+    /**
+     * Forget the results of the class files depending on any of the given
+     * classes, returning their project relative paths.
+     */
+    List<String> invalidateReferencing(final Set<String> classNames)
+    {
+        final List<String> invalidated = new ArrayList<>();
+        for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+            for (final String reference : e.getValue().references) {
+                if (classNames.contains(reference)) {
+                    invalidated.add(e.getKey());
+                    break;
+                }
+            }
+        }
+        if (!invalidated.isEmpty()) {
+            entries.keySet().removeAll(invalidated);
+            dirty = true;
+        }
+        return invalidated;
+    }
+
+    /**
+     * Drop all entries if they were recorded with other settings.
+     */
+    private synchronized void reset(final String settings)
+    {
+        if (settings.equals(fingerprint)) {
+            return;
+        }
+        if (!entries.isEmpty() && (EnhancerPlugin.getDebugLevel() >= 2)) {
+            EnhancerPlugin.logInfo("... enhancement settings changed, dropping the index of " + entries.size() + " classes");
+        }
+        entries.clear();
+        fingerprint = settings;
+        dirty = true;
+    }
+
+    void remove(final IFile classFile)
+    {
+        if (entries.remove(key(classFile)) != null) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Start tracking the class files visited so entries of deleted classes can
+     * be dropped by {@link #endFullBuild(boolean)}.
+     */
+    void beginFullBuild()
+    {
+        seen = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+    }
+
+    /**
+     * Stop tracking the class files visited, dropping the entries of those not
+     * visited if the full build completed.
+     */
+    void endFullBuild(final boolean completed)
+    {
+        final Set<String> current = seen;
+        seen = null;
+        if (completed && (current != null) && entries.keySet().retainAll(current)) {
+            dirty = true;
+        }
+    }
+
+    /**
+     * Forget all classes and delete the stored index.
+     */
+    void clear()
+    {
+        entries.clear();
+        fingerprint = null;
+        scope = null;
+        dirty = false;
+        if (file.exists() && !file.delete()) {
+            EnhancerPlugin.logInfo("Could not delete enhancement index " + file);
+        }
+    }
+
+    /**
+     * Write the index back to the plugin state location if it has changed.
+     */
+    void save()
+    {
+        if (!dirty) {
+            return;
+        }
+        dirty = false;
+
+        final File dir = file.getParentFile();
+        if (!dir.exists() && !dir.mkdirs()) {
+            EnhancerPlugin.logInfo("Could not create enhancement index directory " + dir);
+            return;
+        }
+
+        final File tmp = new File(dir, file.getName() + ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tmp)))) {
+                out.writeInt(MAGIC);
+                out.writeUTF((fingerprint == null) ? "" : fingerprint);
+                out.writeUTF((scope == null) ? "" : scope);
+                out.writeInt(entries.size());
+                for (final Map.Entry<String, Entry> e : entries.entrySet()) {
+                    out.writeUTF(e.getKey());
+                    e.getValue().write(out);
+                }
+            }
+            Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        catch (final IOException e) {
+            EnhancerPlugin.logError("Error writing enhancement index " + file, e);
+        }
+    }
+
+    private void read()
+    {
+        if (!file.exists()) {
+            return;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                return;
+            }
+            final String settings = in.readUTF();
+            final String lastScope = in.readUTF();
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                entries.put(key, Entry.read(in));
+            }
+            fingerprint = settings.isEmpty() ? null : settings;
+            scope = lastScope.isEmpty() ? null : lastScope;
+        }
+        catch (final IOException e) {
+            // a damaged index only costs re-running the agent
+            entries.clear();
+            fingerprint = null;
+            scope = null;
+            EnhancerPlugin.logError("Error reading enhancement index " + file, e);
+        }
+    }
+
+    private static String key(final IFile classFile)
+    {
+        return classFile.getProjectRelativePath().toString();
+    }
+
+    private static final class Entry
+    {
+        private final byte[] input;
+
+        private final byte[] output;
+
+        private final boolean enhanced;
+
+        private final String[] references;
+
+        private Entry(final byte[] input, final byte[] output, final String[] references)
+        {
+            this.input = input;
+            this.output = output;
+            this.enhanced = output != null;
+            this.references = references;
+        }
+
+        private void write(final DataOutputStream out) throws IOException
+        {
+            out.writeBoolean(enhanced);
+            writeHash(out, input);
+            if (enhanced) {
+                writeHash(out, output);
+            }
+            out.writeShort(references.length);
+            for (final String reference : references) {
+                out.writeUTF(reference);
+            }
+        }
+
+        private static Entry read(final DataInputStream in) throws IOException
+        {
+            final boolean enhanced = in.readBoolean();
+            final byte[] input = readHash(in);
+            final byte[] output = enhanced ? readHash(in) : null;
+            final String[] references = new String[in.readUnsignedShort()];
+            for (int i = 0; i < references.length; i++) {
+                references[i] = in.readUTF();
+            }
+            return new Entry(input, output, references);
+        }
+
+        private static void writeHash(final DataOutputStream out, final byte[] hash) throws IOException
+        {
+            out.writeByte(hash.length);
+            out.write(hash);
+        }
+
+        private static byte[] readHash(final DataInputStream in) throws IOException
+        {
+            final byte[] hash = new byte[in.readUnsignedByte()];
+            in.readFully(hash);
+            return hash;
+        }
+    }
+}
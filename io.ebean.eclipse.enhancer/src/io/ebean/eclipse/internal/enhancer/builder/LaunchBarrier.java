@@ -0,0 +1,76 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.core.runtime.jobs.IJobManager;
+import org.eclipse.core.runtime.jobs.ISchedulingRule;
+import org.eclipse.core.runtime.jobs.Job;
+import org.eclipse.debug.core.ILaunch;
+import org.eclipse.debug.core.ILaunchListener;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * Holds back launches (including JUnit runs) until the pending deferred
+ * enhancement has finished, so no launch sees unenhanced classes.
+ * <p>
+ * Launches are added to the launch manager before they start, on the thread
+ * launching them, which is where this waits for the enhancement jobs. A thread
+ * holding a scheduling rule that contains the rule of a job would wait forever,
+ * so it enhances the class files pending in that job itself. Only a thread
+ * holding a rule that merely overlaps the rule of a job can do neither, its
+ * launch goes ahead with a warning in the error log.
+ */
+public final class LaunchBarrier implements ILaunchListener
+{
+    @Override
+    public void launchAdded(final ILaunch launch)
+    {
+        final IJobManager jobManager = Job.getJobManager();
+        final Job[] jobs = jobManager.find(DeferredEnhanceJob.FAMILY);
+        if (jobs.length == 0) {
+            return;
+        }
+
+        // skip the coalescing delay
+        jobManager.wakeUp(DeferredEnhanceJob.FAMILY);
+
+        final ISchedulingRule held = jobManager.currentRule();
+        for (final Job job : jobs) {
+            final ISchedulingRule rule = job.getRule();
+            if ((held == null) || (rule == null) || !held.isConflicting(rule)) {
+                try {
+                    job.join();
+                }
+                catch (final InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    EnhancerPlugin.logError("Interrupted waiting for enhancement before launch", e);
+                    return;
+                }
+            } else if (held.contains(rule)) {
+                // the job cannot start before the rule is released, the run
+                // takes its pending class files and leaves it nothing to do
+                ((DeferredEnhanceJob) job).runInWorkspace(new NullProgressMonitor());
+            } else {
+                EnhancerPlugin.logWarning("Launching " + launchName(launch) + " before the deferred " + job.getName()
+                        + " ran, it may see unenhanced classes");
+            }
+        }
+    }
+
+    @Override
+    public void launchChanged(final ILaunch launch)
+    {
+        // no-op
+    }
+
+    @Override
+    public void launchRemoved(final ILaunch launch)
+    {
+        // no-op
+    }
+
+    private static String launchName(final ILaunch launch)
+    {
+        return (launch.getLaunchConfiguration() == null) ? "" : launch.getLaunchConfiguration().getName();
+    }
+}
@@ -0,0 +1,201 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IMarker;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.runtime.CoreException;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerConstants;
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * The enhancement problems found by one build, applied to the workspace as a
+ * difference to the markers already there.
+ * <p>
+ * Every marker records the class file whose enhancement reported it. For each
+ * class file processed by the build, markers no longer reported are deleted and
+ * new ones created, while unchanged ones are left alone so the Problems view
+ * and marker deltas only see real changes. Used by the builder thread only.
+ */
+final class ProblemMarkers
+{
+    /**
+     * The attribute holding the project relative path of the class file.
+     */
+    static final String CLASS_FILE = "classFile";
+
+    private static final String[] ATTRIBUTES = { IMarker.SEVERITY, IMarker.PRIORITY, IMarker.LINE_NUMBER, IMarker.MESSAGE,
+            CLASS_FILE };
+
+    private final IProject project;
+
+    /**
+     * The problems per processed class file, by resource and message.
+     */
+    private final Map<String, Map<String, Problem>> reported = new HashMap<>();
+
+    /**
+     * The class files whose markers are left as they are.
+     */
+    private final Set<String> kept = new HashSet<>();
+
+    ProblemMarkers(final IProject project)
+    {
+        this.project = project;
+    }
+
+    /**
+     * Record that the class file was processed, so its markers are replaced by
+     * the problems reported for it (if any).
+     */
+    void processed(final IFile classFile)
+    {
+        problems(classFile);
+    }
+
+    /**
+     * Record that the class file could not be looked at, so its markers are
+     * left as they are, even by a complete build.
+     */
+    void kept(final IFile classFile)
+    {
+        kept.add(classFile.getProjectRelativePath().toString());
+    }
+
+    /**
+     * Record that the class file was removed, so its markers are deleted.
+     */
+    void removed(final IFile classFile)
+    {
+        problems(classFile).clear();
+    }
+
+    /**
+     * Return true if no class file was recorded, applying would then only
+     * delete markers for a complete build.
+     */
+    boolean isEmpty()
+    {
+        return reported.isEmpty();
+    }
+
+    /**
+     * Record a problem enhancing the class file, shown on the given resource.
+     */
+    void report(final IFile classFile, final IResource target, final String message)
+    {
+        final Problem problem = new Problem(target, message);
+        problems(classFile).put(problem.key(), problem);
+    }
+
+    /**
+     * Bring the markers of the processed class files in line with the reported
+     * problems, this should run inside the build's workspace operation.
+     *
+     * @param complete
+     *            true if every class file in scope was processed, the markers
+     *            of other class files are then deleted as well
+     * @return the numbers of markers created and deleted
+     */
+    int[] apply(final boolean complete) throws CoreException
+    {
+        if (reported.isEmpty() && !complete) {
+            kept.clear();
+            return new int[2];
+        }
+
+        final List<IMarker> stale = new ArrayList<>();
+        final Set<String> existing = new HashSet<>();
+        for (final IMarker marker : project.findMarkers(EnhancerConstants.MARKER_TYPE, false, IResource.DEPTH_INFINITE)) {
+            final String classFile = marker.getAttribute(CLASS_FILE, "");
+            final Map<String, Problem> problems = reported.get(classFile);
+            if (problems == null) {
+                if (complete && !kept.contains(classFile)) {
+                    stale.add(marker);
+                }
+                continue;
+            }
+
+            final String key = key(marker.getResource(), marker.getAttribute(IMarker.MESSAGE, ""));
+            if (problems.containsKey(key) && existing.add(classFile + '\n' + key)) {
+                continue;
+            }
+            stale.add(marker);
+        }
+
+        if (!stale.isEmpty()) {
+            project.getWorkspace().deleteMarkers(stale.toArray(new IMarker[stale.size()]));
+        }
+
+        int created = 0;
+        for (final Map.Entry<String, Map<String, Problem>> entry : reported.entrySet()) {
+            for (final Problem problem : entry.getValue().values()) {
+                if (!existing.contains(entry.getKey() + '\n' + problem.key())) {
+                    final IMarker marker = problem.target.createMarker(EnhancerConstants.MARKER_TYPE);
+                    marker.setAttributes(ATTRIBUTES, new Object[] { IMarker.SEVERITY_ERROR, IMarker.PRIORITY_HIGH, 1, problem.message,
+                            entry.getKey() });
+                    created++;
+                }
+            }
+        }
+        reported.clear();
+        kept.clear();
+        return new int[] { created, stale.size() };
+    }
+
+    /**
+     * Delete all enhancement markers of the project.
+     */
+    static void clear(final IProject project)
+    {
+        try {
+            project.deleteMarkers(EnhancerConstants.MARKER_TYPE, false, IResource.DEPTH_INFINITE);
+        }
+        catch (final CoreException e) {
+            EnhancerPlugin.logError("Error deleting enhancement markers of " + project.getName(), e);
+        }
+    }
+
+    private Map<String, Problem> problems(final IFile classFile)
+    {
+        final String path = classFile.getProjectRelativePath().toString();
+        Map<String, Problem> problems = reported.get(path);
+        if (problems == null) {
+            problems = new LinkedHashMap<>();
+            reported.put(path, problems);
+        }
+        return problems;
+    }
+
+    private static String key(final IResource target, final String message)
+    {
+        return target.getFullPath() + "\n" + message;
+    }
+
+    private static final class Problem
+    {
+        private final IResource target;
+
+        private final String message;
+
+        private Problem(final IResource target, final String message)
+        {
+            this.target = target;
+            this.message = message;
+        }
+
+        private String key()
+        {
+            return ProblemMarkers.key(target, message);
+        }
+    }
+}
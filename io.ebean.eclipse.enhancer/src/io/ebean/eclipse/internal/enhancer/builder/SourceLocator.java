@@ -0,0 +1,131 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.IFile;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.resources.IResource;
+import org.eclipse.core.resources.IWorkspaceRoot;
+import org.eclipse.core.runtime.IPath;
+import org.eclipse.jdt.core.IClasspathEntry;
+import org.eclipse.jdt.core.IJavaProject;
+import org.eclipse.jdt.core.IType;
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.JavaModelException;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerPlugin;
+
+/**
+ * Finds the source file of a class to place error markers on.
+ * <p>
+ * The source folders are read once per build, and the package path of the
+ * class plus the SourceFile attribute of its class file usually name the
+ * source directly. Only when that fails is the Java model searched. Used by
+ * the builder thread only, and only when a marker is created.
+ */
+final class SourceLocator
+{
+    private final IProject project;
+
+    private List<IPath> sourceFolders;
+
+    /**
+     * The source files found so far, keyed by their path within a source
+     * folder.
+     */
+    private final Map<String, IFile> found = new HashMap<>();
+
+    SourceLocator(final IProject project)
+    {
+        this.project = project;
+    }
+
+    /**
+     * Return the source file of the given class or null if not found.
+     *
+     * @param className
+     *            the class name in dotted form
+     * @param sourceFile
+     *            the SourceFile attribute of the class, may be null
+     */
+    IFile find(final String className, final String sourceFile)
+    {
+        if (sourceFile != null) {
+            final int lastDot = className.lastIndexOf('.');
+            final String relativePath = (lastDot < 0) ? sourceFile : className.substring(0, lastDot).replace('.', '/') + '/' + sourceFile;
+
+            if (found.containsKey(relativePath)) {
+                return found.get(relativePath);
+            }
+            final IFile source = findInSourceFolders(relativePath);
+            if (source != null) {
+                found.put(relativePath, source);
+                return source;
+            }
+        }
+        return findType(className);
+    }
+
+    private IFile findInSourceFolders(final String relativePath)
+    {
+        final IWorkspaceRoot root = project.getWorkspace().getRoot();
+        for (final IPath folder : sourceFolders()) {
+            final IResource member = root.findMember(folder.append(relativePath));
+            if (member instanceof IFile) {
+                return (IFile) member;
+            }
+        }
+        return null;
+    }
+
+    private List<IPath> sourceFolders()
+    {
+        if (sourceFolders == null) {
+            sourceFolders = new ArrayList<>();
+            final IJavaProject javaProject = JavaCore.create(project);
+            if (javaProject.exists()) {
+                try {
+                    for (final IClasspathEntry entry : javaProject.getRawClasspath()) {
+                        if (entry.getEntryKind() == IClasspathEntry.CPE_SOURCE) {
+                            sourceFolders.add(entry.getPath());
+                        }
+                    }
+                }
+                catch (final JavaModelException e) {
+                    EnhancerPlugin.logError("Error reading source folders of " + project.getName(), e);
+                }
+            }
+        }
+        return sourceFolders;
+    }
+
+    /**
+     * Find the source through the Java model, for classes whose source is not
+     * where its name suggests.
+     */
+    private IFile findType(final String className)
+    {
+        final IJavaProject javaProject = JavaCore.create(project);
+        if (!javaProject.exists()) {
+            return null;
+        }
+        try {
+            // nested classes are found through their top level class
+            final int nested = className.indexOf('$');
+            final IType type = javaProject.findType((nested < 0) ? className : className.substring(0, nested));
+            if (type != null) {
+                final IFile sourceFile = project.getWorkspace().getRoot().getFile(type.getPath());
+                if (sourceFile.exists()) {
+                    return sourceFile;
+                }
+            }
+        }
+        catch (final JavaModelException e) {
+            EnhancerPlugin.logError("Error in findSourcePath", e);
+        }
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+package io.ebean.eclipse.internal.enhancer.builder;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.eclipse.core.resources.IContainer;
+import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.Path;
+
+import io.ebean.eclipse.internal.enhancer.EnhancerConfig;
+
+/**
+ * Tells which classes are compiled into the output folders of a project and of
+ * the projects it requires, the only classes whose changes the
+ * {@link EnhancementIndex} follows.
+ * <p>
+ * Lookups only ask the workspace tree, which is in memory. Packages missing
+ * from the output folders are remembered, so the library classes making up
+ * most references cost one map lookup each. Created per build and used by its
+ * worker threads.
+ */
+final class WorkspaceClasses
+{
+    /**
+     * The most classes recorded for one class file.
+     */
+    private static final int MAX_REFERENCES = 0xFFFF;
+
+    private final IContainer[] own;
+
+    private final IContainer[] upstream;
+
+    private final Map<String, Boolean> ownPackages = new ConcurrentHashMap<>();
+
+    private final Map<String, Boolean> upstreamPackages = new ConcurrentHashMap<>();
+
+    WorkspaceClasses(final EnhanceScope scope, final IProject[] required, final EnhancerConfig config)
+    {
+        final List<IContainer> outputs = scope.getOutputContainers();
+        this.own = outputs.toArray(new IContainer[outputs.size()]);
+
+        final List<IContainer> upstreamOutputs = new ArrayList<>();
+        for (final IProject project : required) {
+            upstreamOutputs.addAll(EnhanceScope.create(project, config).getOutputContainers());
+        }
+        this.upstream = upstreamOutputs.toArray(new IContainer[upstreamOutputs.size()]);
+    }
+
+    /**
+     * Return the classes whose changes may change the enhancement of a class:
+     * its interfaces compiled in the workspace, which decide whether it is a
+     * candidate at all, and the classes it references from required projects.
+     */
+    String[] references(final String[] interfaces, final List<String> referenced)
+    {
+        final Set<String> references = new TreeSet<>();
+        for (final String name : interfaces) {
+            if (exists(own, ownPackages, name) || exists(upstream, upstreamPackages, name)) {
+                references.add(name);
+            }
+        }
+        for (final String name : referenced) {
+            if (references.size() == MAX_REFERENCES) {
+                break;
+            }
+            if (exists(upstream, upstreamPackages, name)) {
+                references.add(name);
+            }
+        }
+        return references.toArray(new String[references.size()]);
+    }
+
+    private static boolean exists(final IContainer[] containers, final Map<String, Boolean> packages, final String className)
+    {
+        if (containers.length == 0) {
+            return false;
+        }
+        final int slash = className.lastIndexOf('/');
+        final String packagePath = (slash < 0) ? "" : className.substring(0, slash);
+        Boolean present = packages.get(packagePath);
+        if (present == null) {
+            present = Boolean.valueOf(packagePath.isEmpty() || containsFolder(containers, packagePath));
+            packages.put(packagePath, present);
+        }
+        if (!present.booleanValue()) {
+            return false;
+        }
+        final Path path = new Path(className + ".class");
+        for (final IContainer container : containers) {
+            if (container.getFile(path).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean containsFolder(final IContainer[] containers, final String packagePath)
+    {
+        final Path path = new Path(packagePath);
+        for (final IContainer container : containers) {
+            if (container.getFolder(path).exists()) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,109 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.IOException;
+
+import io.ebean.eclipse.internal.enhancer.engine.EnhanceEngine.Outcome;
+import io.ebean.enhance.agent.MessageOutput;
+
+/**
+ * Enhances every class of a {@link ClassSource} into a {@link ResultSink},
+ * outside of any workspace.
+ */
+public final class BatchEnhancer
+{
+    private final EnhanceEngine engine;
+
+    private final int parallelism;
+
+    private final MessageOutput log;
+
+    private int enhanced;
+
+    private int unchanged;
+
+    private int failed;
+
+    /**
+     * @param engine
+     *            enhances the classes
+     * @param parallelism
+     *            the number of threads enhancing classes
+     * @param log
+     *            receives the enhancement errors
+     */
+    public BatchEnhancer(final EnhanceEngine engine, final int parallelism, final MessageOutput log)
+    {
+        this.engine = engine;
+        this.parallelism = parallelism;
+        this.log = log;
+    }
+
+    /**
+     * Enhance all classes of the source, passing every file on to the sink.
+     */
+    public void run(final ClassSource source, final ResultSink sink) throws IOException, InterruptedException
+    {
+        new ParallelRunner(parallelism).run(new ParallelRunner.Source<ClassEntry>()
+        {
+            @Override
+            public ClassEntry next() throws IOException
+            {
+                return source.next();
+            }
+        }, new ParallelRunner.Task<ClassEntry, Outcome>()
+        {
+            @Override
+            public Outcome process(final ClassEntry entry) throws Exception
+            {
+                return entry.isClassFile() ? engine.process(entry.getBytes()) : null;
+            }
+
+            @Override
+            public void complete(final ClassEntry entry, final Outcome outcome) throws IOException
+            {
+                if ((outcome != null) && !outcome.getErrors().isEmpty()) {
+                    for (final Throwable error : outcome.getErrors()) {
+                        log.println("Error enhancing " + entry + ": " + error);
+                    }
+                    failed++;
+                    sink.failed(entry, outcome.getErrors().get(0));
+                } else if ((outcome != null) && outcome.isEnhanced()) {
+                    enhanced++;
+                    sink.enhanced(entry, outcome.getEnhancedBytes());
+                } else {
+                    unchanged++;
+                    sink.unchanged(entry);
+                }
+            }
+
+            @Override
+            public void failed(final ClassEntry entry, final Exception failure) throws IOException
+            {
+                log.println("Error enhancing " + entry + ": " + failure);
+                failed++;
+                sink.failed(entry, failure);
+            }
+
+            @Override
+            public boolean isCanceled()
+            {
+                return false;
+            }
+        });
+    }
+
+    public int getEnhancedCount()
+    {
+        return enhanced;
+    }
+
+    public int getUnchangedCount()
+    {
+        return unchanged;
+    }
+
+    public int getFailedCount()
+    {
+        return failed;
+    }
+}
@@ -0,0 +1,222 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import io.ebean.enhance.agent.ClassBytesReader;
+import io.ebean.enhance.asm.ClassReader;
+import io.ebean.enhance.asm.ClassWriter;
+
+/**
+ * Reads the classes the entity transformer needs metadata of through an open
+ * classloader, serving them from a {@link ClassMetaCache}.
+ * <p>
+ * The agent's own reader opens a new classloader over the whole classpath for
+ * every class it looks up. This one resolves classes with the given loader and
+ * caches them code-stripped, which leaves everything the agent reads: the
+ * supertypes, annotations, fields and method signatures.
+ * <p>
+ * With a {@link ClasspathIndex} the loader only stands for the parent of the
+ * classpath (the JDK), classes it does not find are looked up in the index.
+ * <p>
+ * Jars are stamped once per reader, so a reader must not outlive a change of
+ * its jars; class files in folders are stamped on every lookup.
+ */
+public final class CachingClassBytesReader implements ClassBytesReader
+{
+    /**
+     * Classes of the runtime image change with the Java installation.
+     */
+    private static final long RUNTIME_STAMP = (System.getProperty("java.home") + System.getProperty("java.runtime.version")).hashCode();
+
+    private final ClassLoader classLoader;
+
+    private final ClasspathIndex index;
+
+    private final ClassMetaCache cache;
+
+    private final ConcurrentMap<String, Long> jarStamps = new ConcurrentHashMap<>();
+
+    public CachingClassBytesReader(final ClassLoader classLoader, final ClassMetaCache cache)
+    {
+        this(classLoader, null, cache);
+    }
+
+    /**
+     * @param classLoader
+     *            the loader searched first, the parent of the classpath if an
+     *            index is given
+     * @param index
+     *            the index of the classpath, may be null
+     * @param cache
+     *            the cache of class bytes
+     */
+    public CachingClassBytesReader(final ClassLoader classLoader, final ClasspathIndex index, final ClassMetaCache cache)
+    {
+        this.classLoader = classLoader;
+        this.index = index;
+        this.cache = cache;
+    }
+
+    /**
+     * Return the class bytes for the given class, null if not found.
+     *
+     * @param className
+     *            the class name, in either dotted or internal form
+     * @param ignored
+     *            the loader of the class being transformed, classes are
+     *            resolved with the loader of this reader instead
+     */
+    @Override
+    public byte[] getClassBytes(final String className, final ClassLoader ignored)
+    {
+        final String resourceName = className.replace('.', '/') + ".class";
+        final URL url = classLoader.getResource(resourceName);
+        if (url == null) {
+            return (index == null) ? null : getIndexedBytes(className, resourceName);
+        }
+
+        final String origin = origin(url);
+        final long stamp = (origin == null) ? 0 : stamp(url, origin);
+        if (origin != null) {
+            final byte[] cached = cache.get(className, origin, stamp);
+            if (cached != null) {
+                return cached;
+            }
+        }
+
+        final byte[] bytes;
+        try {
+            bytes = strip(read(url));
+        }
+        catch (final IOException e) {
+            throw new RuntimeException("IOException reading bytes for " + className, e);
+        }
+        if (origin != null) {
+            cache.put(className, origin, stamp, bytes);
+        }
+        return bytes;
+    }
+
+    private byte[] getIndexedBytes(final String className, final String resourceName)
+    {
+        final ClasspathIndex.Resource resource = index.find(resourceName);
+        if (resource == null) {
+            return null;
+        }
+
+        final byte[] cached = cache.get(className, resource.getOrigin(), resource.getStamp());
+        if (cached != null) {
+            return cached;
+        }
+
+        final byte[] bytes;
+        try (InputStream is = resource.open()) {
+            bytes = strip(read(is));
+        }
+        catch (final IOException e) {
+            throw new RuntimeException("IOException reading bytes for " + className, e);
+        }
+        cache.put(className, resource.getOrigin(), resource.getStamp(), bytes);
+        return bytes;
+    }
+
+    /**
+     * Return the jar, class file or runtime image the class was found in, null
+     * for places with no stamp.
+     */
+    private static String origin(final URL url)
+    {
+        if ("file".equals(url.getProtocol())) {
+            return url.getPath();
+        }
+        if ("jrt".equals(url.getProtocol())) {
+            return url.toString();
+        }
+        if ("jar".equals(url.getProtocol())) {
+            final String path = url.getPath();
+            final int separator = path.indexOf("!/");
+            if ((separator > 0) && path.startsWith("file:")) {
+                return path.substring(0, separator);
+            }
+        }
+        return null;
+    }
+
+    private long stamp(final URL url, final String origin)
+    {
+        if ("file".equals(url.getProtocol())) {
+            return stamp(toFile(url));
+        }
+        if ("jrt".equals(url.getProtocol())) {
+            return RUNTIME_STAMP;
+        }
+
+        Long stamp = jarStamps.get(origin);
+        if (stamp == null) {
+            try {
+                stamp = stamp(toFile(new URL(origin)));
+            }
+            catch (final IOException e) {
+                stamp = 0L;
+            }
+            jarStamps.putIfAbsent(origin, stamp);
+        }
+        return stamp;
+    }
+
+    private static long stamp(final File file)
+    {
+        return (file.lastModified() * 31) + file.length();
+    }
+
+    private static File toFile(final URL url)
+    {
+        try {
+            return new File(url.toURI());
+        }
+        catch (final URISyntaxException | IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    private static byte[] read(final URL url) throws IOException
+    {
+        try (InputStream is = url.openStream()) {
+            return read(is);
+        }
+    }
+
+    private static byte[] read(final InputStream is) throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int len;
+        while ((len = is.read(buf)) > -1) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+
+    /**
+     * Drop the method bodies and debug information, returning the bytes as they
+     * are if the agent's ASM cannot read them.
+     */
+    private static byte[] strip(final byte[] classBytes)
+    {
+        try {
+            final ClassWriter cw = new ClassWriter(0);
+            new ClassReader(classBytes).accept(cw, ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+            return cw.toByteArray();
+        }
+        catch (final RuntimeException e) {
+            return classBytes;
+        }
+    }
+}
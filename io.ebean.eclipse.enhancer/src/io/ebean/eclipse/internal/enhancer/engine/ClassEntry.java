@@ -0,0 +1,48 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+/**
+ * A file read by a {@link ClassSource}, usually a class file.
+ */
+public final class ClassEntry
+{
+    private final String name;
+
+    private final byte[] bytes;
+
+    /**
+     * @param name
+     *            the path of the file relative to the root of its source,
+     *            separated by slashes
+     * @param bytes
+     *            the file content
+     */
+    public ClassEntry(final String name, final byte[] bytes)
+    {
+        this.name = name;
+        this.bytes = bytes;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    public byte[] getBytes()
+    {
+        return bytes;
+    }
+
+    /**
+     * Return true if this is a class file, anything else is only copied.
+     */
+    public boolean isClassFile()
+    {
+        return name.endsWith(".class");
+    }
+
+    @Override
+    public String toString()
+    {
+        return name;
+    }
+}
@@ -0,0 +1,308 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The parts of a class file read by scanning its constant pool, without
+ * building any ASM visitor. This is the one place the builder reads class file
+ * metadata from.
+ * <p>
+ * The ebean transformers only touch classes that mention a JPA or ebean
+ * annotation, a transactional annotation or a query bean type, and all of
+ * those show up as UTF8 constants. Everything else can skip the agent.
+ */
+public final class ClassHeader
+{
+    private static final int MAGIC = 0xCAFEBABE;
+
+    private static final byte[][] ANNOTATION_PREFIXES = {
+            ascii("Ljavax/persistence/"),
+            ascii("Lio/ebean/annotation/"),
+            ascii("Ljavax/transaction/Transactional;") };
+
+    private static final byte[][] QUERY_BEAN_MARKERS = {
+            ascii("io/ebean/typequery/"),
+            ascii("/query/Q"),
+            ascii("/query/assoc/Q") };
+
+    private final byte[] b;
+
+    /**
+     * Offsets of the constant pool entries, pointing at their tag byte.
+     */
+    private final int[] offsets;
+
+    private final int accessOffset;
+
+    private boolean annotationMarker;
+
+    private boolean queryBeanMarker;
+
+    private ClassHeader(final byte[] classBytes)
+    {
+        this.b = classBytes;
+        if ((classBytes.length < 10) || (readInt(0) != MAGIC)) {
+            throw new IllegalArgumentException("Not a class file");
+        }
+
+        final int count = readUnsignedShort(8);
+        this.offsets = new int[count];
+        int pos = 10;
+        for (int i = 1; i < count; i++) {
+            offsets[i] = pos;
+            final int tag = b[pos];
+            switch (tag)
+            {
+                case 1: // Utf8
+                {
+                    final int length = readUnsignedShort(pos + 1);
+                    scan(pos + 3, length);
+                    pos += 3 + length;
+                    break;
+                }
+                case 3: // Integer
+                case 4: // Float
+                case 9: // Fieldref
+                case 10: // Methodref
+                case 11: // InterfaceMethodref
+                case 12: // NameAndType
+                case 17: // Dynamic
+                case 18: // InvokeDynamic
+                {
+                    pos += 5;
+                    break;
+                }
+                case 5: // Long
+                case 6: // Double
+                {
+                    pos += 9;
+                    // takes two entries
+                    i++;
+                    break;
+                }
+                case 7: // Class
+                case 8: // String
+                case 16: // MethodType
+                case 19: // Module
+                case 20: // Package
+                {
+                    pos += 3;
+                    break;
+                }
+                case 15: // MethodHandle
+                {
+                    pos += 4;
+                    break;
+                }
+                default:
+                {
+                    throw new IllegalArgumentException("Unknown constant pool tag " + tag);
+                }
+            }
+        }
+        this.accessOffset = pos;
+    }
+
+    /**
+     * Read the header of the given class bytes.
+     *
+     * @throws IllegalArgumentException
+     *             if the bytes are not a class file this scanner understands
+     */
+    public static ClassHeader read(final byte[] classBytes)
+    {
+        try {
+            return new ClassHeader(classBytes);
+        }
+        catch (final ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated class file", e);
+        }
+    }
+
+    /**
+     * Return true if the class mentions a JPA, ebean or transactional
+     * annotation.
+     */
+    public boolean hasAnnotationMarker()
+    {
+        return annotationMarker;
+    }
+
+    /**
+     * Return true if the class is or refers to a query bean.
+     */
+    public boolean hasQueryBeanMarker()
+    {
+        return queryBeanMarker;
+    }
+
+    /**
+     * Return the internal name of the class.
+     */
+    public String getClassName()
+    {
+        return classAt(readUnsignedShort(accessOffset + 2));
+    }
+
+    /**
+     * Return the internal names of the directly implemented interfaces.
+     */
+    public String[] getInterfaces()
+    {
+        final int count = readUnsignedShort(accessOffset + 6);
+        final String[] interfaces = new String[count];
+        for (int i = 0; i < count; i++) {
+            interfaces[i] = classAt(readUnsignedShort(accessOffset + 8 + (i * 2)));
+        }
+        return interfaces;
+    }
+
+    /**
+     * Return the internal names of all classes the class refers to, other than
+     * array types.
+     */
+    public List<String> getReferencedClasses()
+    {
+        final List<String> classes = new ArrayList<>();
+        for (int i = 1; i < offsets.length; i++) {
+            if ((offsets[i] != 0) && (b[offsets[i]] == 7)) {
+                final String name = classAt(i);
+                if (name.charAt(0) != '[') {
+                    classes.add(name);
+                }
+            }
+        }
+        return classes;
+    }
+
+    /**
+     * Return the name of the source file recorded by the compiler, null if the
+     * class was compiled without it.
+     */
+    public String getSourceFile()
+    {
+        int pos = accessOffset + 8 + (readUnsignedShort(accessOffset + 6) * 2);
+        // fields then methods, both an access, name and descriptor before their attributes
+        for (int member = 0; member < 2; member++) {
+            final int count = readUnsignedShort(pos);
+            pos += 2;
+            for (int i = 0; i < count; i++) {
+                pos = skipAttributes(pos + 6);
+            }
+        }
+
+        final int count = readUnsignedShort(pos);
+        pos += 2;
+        for (int i = 0; i < count; i++) {
+            if ("SourceFile".equals(utf8At(readUnsignedShort(pos)))) {
+                return utf8At(readUnsignedShort(pos + 6));
+            }
+            pos += 6 + readInt(pos + 2);
+        }
+        return null;
+    }
+
+    /**
+     * Return the position after the attribute table starting at the given
+     * position.
+     */
+    private int skipAttributes(final int start)
+    {
+        final int count = readUnsignedShort(start);
+        int pos = start + 2;
+        for (int i = 0; i < count; i++) {
+            pos += 6 + readInt(pos + 2);
+        }
+        return pos;
+    }
+
+    private String classAt(final int index)
+    {
+        return utf8At(readUnsignedShort(offsets[index] + 1));
+    }
+
+    private String utf8At(final int index)
+    {
+        final int pos = offsets[index];
+        final int length = readUnsignedShort(pos + 1);
+        final int start = pos + 3;
+        final char[] chars = new char[length];
+        int count = 0;
+        int i = start;
+        while (i < (start + length)) {
+            final int c = b[i++] & 0xFF;
+            if (c < 0x80) {
+                chars[count++] = (char) c;
+            } else if ((c & 0xE0) == 0xC0) {
+                chars[count++] = (char) (((c & 0x1F) << 6) | (b[i++] & 0x3F));
+            } else {
+                chars[count++] = (char) (((c & 0x0F) << 12) | ((b[i++] & 0x3F) << 6) | (b[i++] & 0x3F));
+            }
+        }
+        return new String(chars, 0, count);
+    }
+
+    private void scan(final int start, final int length)
+    {
+        if (!annotationMarker) {
+            for (final byte[] prefix : ANNOTATION_PREFIXES) {
+                if (regionMatches(start, length, prefix, 0)) {
+                    annotationMarker = true;
+                    break;
+                }
+            }
+        }
+        if (!queryBeanMarker) {
+            for (final byte[] marker : QUERY_BEAN_MARKERS) {
+                if (contains(start, length, marker)) {
+                    queryBeanMarker = true;
+                    break;
+                }
+            }
+        }
+    }
+
+    private boolean contains(final int start, final int length, final byte[] marker)
+    {
+        final int last = length - marker.length;
+        for (int i = 0; i <= last; i++) {
+            if (regionMatches(start, length, marker, i)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean regionMatches(final int start, final int length, final byte[] marker, final int offset)
+    {
+        if ((offset + marker.length) > length) {
+            return false;
+        }
+        for (int i = 0; i < marker.length; i++) {
+            if (b[start + offset + i] != marker[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int readUnsignedShort(final int pos)
+    {
+        return ((b[pos] & 0xFF) << 8) | (b[pos + 1] & 0xFF);
+    }
+
+    private int readInt(final int pos)
+    {
+        return ((b[pos] & 0xFF) << 24) | ((b[pos + 1] & 0xFF) << 16) | ((b[pos + 2] & 0xFF) << 8) | (b[pos + 3] & 0xFF);
+    }
+
+    private static byte[] ascii(final String value)
+    {
+        final byte[] bytes = new byte[value.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) value.charAt(i);
+        }
+        return bytes;
+    }
+}
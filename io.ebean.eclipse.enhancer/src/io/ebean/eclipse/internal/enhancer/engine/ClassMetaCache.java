@@ -0,0 +1,196 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * The class metadata the entity transformer reads for supertypes and
+ * interfaces, shared by all transformers and kept across sessions.
+ * <p>
+ * Entries are code-stripped class bytes keyed by class name and the jar or
+ * folder the class was found in, valid as long as the stamp of that origin is
+ * unchanged. A cache can be saved to and loaded from a compressed file, keeping
+ * the most recently used entries.
+ */
+public final class ClassMetaCache
+{
+    private static final int MAGIC = 0xEBEA0C01;
+
+    /**
+     * The most entries saved.
+     */
+    private static final int MAX_SAVED = 20000;
+
+    private static final Comparator<Map.Entry<String, Meta>> RECENT_FIRST = new Comparator<Map.Entry<String, Meta>>()
+    {
+        @Override
+        public int compare(final Map.Entry<String, Meta> a, final Map.Entry<String, Meta> b)
+        {
+            return Long.compare(b.getValue().used, a.getValue().used);
+        }
+    };
+
+    private final ConcurrentMap<String, Meta> entries = new ConcurrentHashMap<>();
+
+    /**
+     * Orders the uses of entries, for keeping the recent ones on save.
+     */
+    private final AtomicLong clock = new AtomicLong();
+
+    private final AtomicLong hits = new AtomicLong();
+
+    private final AtomicLong misses = new AtomicLong();
+
+    private volatile boolean dirty;
+
+    /**
+     * Return the cached bytes of the class found in the given origin, null if
+     * not cached or the origin changed since.
+     */
+    byte[] get(final String className, final String origin, final long stamp)
+    {
+        final Meta meta = entries.get(key(className, origin));
+        if ((meta == null) || (meta.stamp != stamp)) {
+            misses.incrementAndGet();
+            return null;
+        }
+        meta.used = clock.incrementAndGet();
+        hits.incrementAndGet();
+        return meta.bytes;
+    }
+
+    void put(final String className, final String origin, final long stamp, final byte[] bytes)
+    {
+        final Meta meta = new Meta(stamp, bytes);
+        meta.used = clock.incrementAndGet();
+        entries.put(key(className, origin), meta);
+        dirty = true;
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    public long getHits()
+    {
+        return hits.get();
+    }
+
+    public long getMisses()
+    {
+        return misses.get();
+    }
+
+    /**
+     * Return true if entries were added since the cache was loaded or saved.
+     */
+    public boolean isDirty()
+    {
+        return dirty;
+    }
+
+    public void clear()
+    {
+        entries.clear();
+        dirty = true;
+    }
+
+    /**
+     * Read the entries saved in the given file, a missing or damaged file
+     * leaves the cache empty.
+     */
+    public static ClassMetaCache load(final File file)
+    {
+        final ClassMetaCache cache = new ClassMetaCache();
+        if (!file.isFile()) {
+            return cache;
+        }
+
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                return cache;
+            }
+            final int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                final String key = in.readUTF();
+                final long stamp = in.readLong();
+                final byte[] bytes = new byte[in.readInt()];
+                in.readFully(bytes);
+                // keeps the saved order, most recent first
+                final Meta meta = new Meta(stamp, bytes);
+                meta.used = count - i;
+                cache.entries.put(key, meta);
+            }
+            cache.clock.set(count);
+        }
+        catch (final IOException | RuntimeException e) {
+            // only a cache, start over
+            cache.entries.clear();
+        }
+        return cache;
+    }
+
+    /**
+     * Write the most recently used entries to the given file.
+     */
+    public void save(final File file) throws IOException
+    {
+        final List<Map.Entry<String, Meta>> list = new ArrayList<>(entries.entrySet());
+        Collections.sort(list, RECENT_FIRST);
+        final int count = Math.min(list.size(), MAX_SAVED);
+
+        dirty = false;
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(count);
+            for (int i = 0; i < count; i++) {
+                final Map.Entry<String, Meta> entry = list.get(i);
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().stamp);
+                out.writeInt(entry.getValue().bytes.length);
+                out.write(entry.getValue().bytes);
+            }
+        }
+        if (!temp.renameTo(file) && (!file.delete() || !temp.renameTo(file))) {
+            throw new IOException("Unable to replace " + file);
+        }
+    }
+
+    private static String key(final String className, final String origin)
+    {
+        return className + '@' + origin;
+    }
+
+    private static final class Meta
+    {
+        private final long stamp;
+
+        private final byte[] bytes;
+
+        private volatile long used;
+
+        private Meta(final long stamp, final byte[] bytes)
+        {
+            this.stamp = stamp;
+            this.bytes = bytes;
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Supplies the files to enhance one at a time.
+ */
+public interface ClassSource extends Closeable
+{
+    /**
+     * Return the next file, null when there are no more.
+     */
+    ClassEntry next() throws IOException;
+}
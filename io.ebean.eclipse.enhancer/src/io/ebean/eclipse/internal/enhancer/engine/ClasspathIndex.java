@@ -0,0 +1,570 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.MalformedURLException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+/**
+ * Finds resources on a classpath by package, instead of probing every jar in
+ * turn as a <code>URLClassLoader</code> does.
+ * <p>
+ * The packages of each jar are read once from its central directory and kept
+ * per classpath fingerprint (the entries and the stamps of the jars) in an
+ * optional directory, so later sessions reuse them. Folders are not indexed,
+ * their content changes with every build, and are probed on each lookup.
+ * <p>
+ * Jars are opened on their first hit and stay open until the index is closed.
+ * An {@link IndexedClassLoader} loads classes through the index.
+ */
+public final class ClasspathIndex implements Closeable
+{
+    private static final int MAGIC = 0xEBEA0C02;
+
+    /**
+     * The most index files kept in the directory, the least recently used are
+     * deleted.
+     */
+    private static final int MAX_FILES = 16;
+
+    private static final int[] NONE = new int[0];
+
+    private final File[] entries;
+
+    private final boolean[] jars;
+
+    /**
+     * The stamps of the jars.
+     */
+    private final long[] stamps;
+
+    /**
+     * The positions of the folders on the classpath.
+     */
+    private final int[] folders;
+
+    /**
+     * The positions of the jars holding each package, in internal form.
+     */
+    private final Map<String, int[]> packages;
+
+    private final boolean reused;
+
+    private final AtomicReferenceArray<ZipFile> zipFiles;
+
+    private ClasspathIndex(final File[] entries, final boolean[] jars, final long[] stamps, final int[] folders,
+            final Map<String, int[]> packages, final boolean reused)
+    {
+        this.entries = entries;
+        this.jars = jars;
+        this.stamps = stamps;
+        this.folders = folders;
+        this.packages = packages;
+        this.reused = reused;
+        this.zipFiles = new AtomicReferenceArray<>(entries.length);
+    }
+
+    /**
+     * Return the index of the given classpath, read from the directory if it
+     * was built before and otherwise built and saved there.
+     *
+     * @param directory
+     *            where indexes are kept, null to neither read nor save them
+     */
+    public static ClasspathIndex open(final URL[] classpath, final File directory)
+    {
+        final File[] entries = new File[classpath.length];
+        final boolean[] jars = new boolean[classpath.length];
+        final long[] stamps = new long[classpath.length];
+        final List<Integer> folderList = new ArrayList<>();
+        for (int i = 0; i < classpath.length; i++) {
+            entries[i] = toFile(classpath[i]);
+            jars[i] = entries[i].isFile();
+            if (jars[i]) {
+                stamps[i] = (entries[i].lastModified() * 31) + entries[i].length();
+            } else {
+                folderList.add(i);
+            }
+        }
+        final int[] folders = new int[folderList.size()];
+        for (int i = 0; i < folders.length; i++) {
+            folders[i] = folderList.get(i);
+        }
+
+        final File file = (directory == null) ? null : new File(directory, fingerprint(entries, stamps) + ".idx");
+        if (file != null) {
+            final Map<String, int[]> packages = load(file);
+            if (packages != null) {
+                file.setLastModified(System.currentTimeMillis());
+                return new ClasspathIndex(entries, jars, stamps, folders, packages, true);
+            }
+        }
+
+        final Map<String, int[]> packages = scan(entries, jars);
+        if (file != null) {
+            save(file, packages);
+        }
+        return new ClasspathIndex(entries, jars, stamps, folders, packages, false);
+    }
+
+    /**
+     * True if the index was read from its directory rather than built.
+     */
+    public boolean isReused()
+    {
+        return reused;
+    }
+
+    /**
+     * The number of packages found in the jars.
+     */
+    public int getPackageCount()
+    {
+        return packages.size();
+    }
+
+    /**
+     * The number of jars on the classpath.
+     */
+    public int getJarCount()
+    {
+        return entries.length - folders.length;
+    }
+
+    /**
+     * Return the first resource of the given name in classpath order, null if
+     * there is none.
+     *
+     * @param name
+     *            the resource name, like <code>a/b/C.class</code>
+     */
+    public Resource find(final String name)
+    {
+        return find(name, true);
+    }
+
+    /**
+     * Return the first resource of the given name in classpath order, null if
+     * there is none.
+     *
+     * @param withFolders
+     *            false to only look in the jars
+     */
+    public Resource find(final String name, final boolean withFolders)
+    {
+        for (final int i : candidates(name, withFolders)) {
+            final Resource resource = resource(i, name);
+            if (resource != null) {
+                return resource;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Return all resources of the given name in classpath order, like
+     * <code>ClassLoader.getResources</code>.
+     */
+    public List<Resource> findAll(final String name, final boolean withFolders)
+    {
+        final List<Resource> found = new ArrayList<>(1);
+        for (final int i : candidates(name, withFolders)) {
+            final Resource resource = resource(i, name);
+            if (resource != null) {
+                found.add(resource);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Close the jars opened by lookups.
+     */
+    @Override
+    public void close() throws IOException
+    {
+        IOException failure = null;
+        for (int i = 0; i < zipFiles.length(); i++) {
+            final ZipFile zipFile = zipFiles.getAndSet(i, null);
+            if (zipFile != null) {
+                try {
+                    zipFile.close();
+                }
+                catch (final IOException e) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Return the positions that may hold the given resource, ascending.
+     */
+    private int[] candidates(final String name, final boolean withFolders)
+    {
+        final int slash = name.lastIndexOf('/');
+        final int[] holders = packages.get((slash < 0) ? "" : name.substring(0, slash));
+        return merge(withFolders ? folders : NONE, (holders == null) ? NONE : holders);
+    }
+
+    private Resource resource(final int i, final String name)
+    {
+        if (!jars[i]) {
+            final File file = new File(entries[i], name);
+            if (file.isFile()) {
+                return new Resource(name, file.getPath(), (file.lastModified() * 31) + file.length(), file, null, null);
+            }
+            return null;
+        }
+
+        final ZipFile zipFile = zipFile(i);
+        final ZipEntry entry = (zipFile == null) ? null : zipFile.getEntry(name);
+        if (entry != null) {
+            return new Resource(name, entries[i].toURI().toString(), stamps[i], null, zipFile, entry);
+        }
+        return null;
+    }
+
+    private ZipFile zipFile(final int i)
+    {
+        ZipFile zipFile = zipFiles.get(i);
+        if (zipFile == null) {
+            try {
+                zipFile = new ZipFile(entries[i]);
+            }
+            catch (final IOException e) {
+                // unreadable, as for the class loader
+                return null;
+            }
+            if (!zipFiles.compareAndSet(i, null, zipFile)) {
+                try {
+                    zipFile.close();
+                }
+                catch (final IOException e) {
+                    // opened twice, keep the other
+                }
+                zipFile = zipFiles.get(i);
+            }
+        }
+        return zipFile;
+    }
+
+    /**
+     * Merge two ascending position arrays.
+     */
+    private static int[] merge(final int[] a, final int[] b)
+    {
+        if (b.length == 0) {
+            return a;
+        }
+        if (a.length == 0) {
+            return b;
+        }
+        final int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int k = 0;
+        while ((i < a.length) && (j < b.length)) {
+            merged[k++] = (a[i] < b[j]) ? a[i++] : b[j++];
+        }
+        while (i < a.length) {
+            merged[k++] = a[i++];
+        }
+        while (j < b.length) {
+            merged[k++] = b[j++];
+        }
+        return merged;
+    }
+
+    /**
+     * Read the packages of each jar from its central directory.
+     */
+    private static Map<String, int[]> scan(final File[] entries, final boolean[] jars)
+    {
+        final Map<String, List<Integer>> found = new HashMap<>();
+        for (int i = 0; i < entries.length; i++) {
+            if (!jars[i]) {
+                continue;
+            }
+            try (ZipFile zipFile = new ZipFile(entries[i])) {
+                String last = null;
+                for (final Enumeration<? extends ZipEntry> e = zipFile.entries(); e.hasMoreElements();) {
+                    final ZipEntry entry = e.nextElement();
+                    if (entry.isDirectory()) {
+                        continue;
+                    }
+                    final int slash = entry.getName().lastIndexOf('/');
+                    final String name = (slash < 0) ? "" : entry.getName().substring(0, slash);
+                    // entries of a package are mostly together
+                    if (!name.equals(last)) {
+                        last = name;
+                        List<Integer> positions = found.get(name);
+                        if (positions == null) {
+                            positions = new ArrayList<>(1);
+                            found.put(name, positions);
+                        }
+                        if (positions.isEmpty() || (positions.get(positions.size() - 1) != i)) {
+                            positions.add(i);
+                        }
+                    }
+                }
+            }
+            catch (final IOException e) {
+                // not a readable jar, as for the class loader
+            }
+        }
+
+        final Map<String, int[]> packages = new HashMap<>(found.size() * 2);
+        for (final Map.Entry<String, List<Integer>> entry : found.entrySet()) {
+            final int[] positions = new int[entry.getValue().size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = entry.getValue().get(i);
+            }
+            packages.put(entry.getKey(), positions);
+        }
+        return packages;
+    }
+
+    private static Map<String, int[]> load(final File file)
+    {
+        if (!file.isFile()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new InflaterInputStream(new FileInputStream(file))))) {
+            if (in.readInt() != MAGIC) {
+                return null;
+            }
+            final int count = in.readInt();
+            final Map<String, int[]> packages = new HashMap<>(count * 2);
+            for (int i = 0; i < count; i++) {
+                final String name = in.readUTF();
+                final int[] positions = new int[in.readInt()];
+                for (int j = 0; j < positions.length; j++) {
+                    positions[j] = in.readInt();
+                }
+                packages.put(name, positions);
+            }
+            return packages;
+        }
+        catch (final IOException | RuntimeException e) {
+            // only a cache, build it again
+            return null;
+        }
+    }
+
+    private static void save(final File file, final Map<String, int[]> packages)
+    {
+        final File directory = file.getParentFile();
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            return;
+        }
+        prune(directory);
+
+        final File temp = new File(file.getPath() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new DeflaterOutputStream(new FileOutputStream(temp))))) {
+            out.writeInt(MAGIC);
+            out.writeInt(packages.size());
+            for (final Map.Entry<String, int[]> entry : packages.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeInt(entry.getValue().length);
+                for (final int position : entry.getValue()) {
+                    out.writeInt(position);
+                }
+            }
+        }
+        catch (final IOException e) {
+            temp.delete();
+            return;
+        }
+        if (!temp.renameTo(file)) {
+            temp.delete();
+        }
+    }
+
+    /**
+     * Delete the least recently used index files, leaving room for one more.
+     */
+    private static void prune(final File directory)
+    {
+        final File[] files = directory.listFiles(new FileFilter()
+        {
+            @Override
+            public boolean accept(final File file)
+            {
+                return file.getName().endsWith(".idx");
+            }
+        });
+        if ((files == null) || (files.length < MAX_FILES)) {
+            return;
+        }
+        Arrays.sort(files, new Comparator<File>()
+        {
+            @Override
+            public int compare(final File a, final File b)
+            {
+                return Long.compare(b.lastModified(), a.lastModified());
+            }
+        });
+        for (int i = MAX_FILES - 1; i < files.length; i++) {
+            files[i].delete();
+        }
+    }
+
+    private static String fingerprint(final File[] entries, final long[] stamps)
+    {
+        try {
+            final MessageDigest digest = MessageDigest.getInstance("SHA-1");
+            for (int i = 0; i < entries.length; i++) {
+                digest.update(entries[i].getPath().getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+                digest.update(Long.toString(stamps[i]).getBytes(StandardCharsets.UTF_8));
+                digest.update((byte) 0);
+            }
+            final StringBuilder sb = new StringBuilder();
+            for (final byte b : digest.digest()) {
+                sb.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return sb.toString();
+        }
+        catch (final NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static File toFile(final URL url)
+    {
+        try {
+            return new File(url.toURI());
+        }
+        catch (final URISyntaxException | IllegalArgumentException e) {
+            return new File(url.getPath());
+        }
+    }
+
+    /**
+     * A resource found in a jar or folder.
+     */
+    public static final class Resource
+    {
+        private final String name;
+
+        private final String origin;
+
+        private final long stamp;
+
+        private final File file;
+
+        private final ZipFile zipFile;
+
+        private final ZipEntry entry;
+
+        private Resource(final String name, final String origin, final long stamp, final File file, final ZipFile zipFile,
+                final ZipEntry entry)
+        {
+            this.name = name;
+            this.origin = origin;
+            this.stamp = stamp;
+            this.file = file;
+            this.zipFile = zipFile;
+            this.entry = entry;
+        }
+
+        /**
+         * The jar or file the resource is in.
+         */
+        public String getOrigin()
+        {
+            return origin;
+        }
+
+        /**
+         * Changes when the jar or file changes.
+         */
+        public long getStamp()
+        {
+            return stamp;
+        }
+
+        /**
+         * True if the resource is a file in a folder, false if it is in a jar.
+         */
+        boolean isFile()
+        {
+            return file != null;
+        }
+
+        public InputStream open() throws IOException
+        {
+            return (file != null) ? new FileInputStream(file) : zipFile.getInputStream(entry);
+        }
+
+        /**
+         * Return a URL of the resource, as a class loader would. It reads
+         * through the jar opened by the index instead of the JDK's cache of
+         * jars, so the jar is released when the index is closed.
+         */
+        public URL toUrl()
+        {
+            final URLStreamHandler handler = new URLStreamHandler()
+            {
+                @Override
+                protected URLConnection openConnection(final URL url)
+                {
+                    return new URLConnection(url)
+                    {
+                        @Override
+                        public void connect()
+                        {
+                            connected = true;
+                        }
+
+                        @Override
+                        public InputStream getInputStream() throws IOException
+                        {
+                            return open();
+                        }
+                    };
+                }
+            };
+            try {
+                if (file != null) {
+                    return new URL("file", "", -1, file.toURI().getRawPath(), handler);
+                }
+                return new URL("jar", "", -1, origin + "!/" + name, handler);
+            }
+            catch (final MalformedURLException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
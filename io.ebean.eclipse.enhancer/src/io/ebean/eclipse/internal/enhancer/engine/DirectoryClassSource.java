@@ -0,0 +1,65 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.IOException;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Reads the files below a directory, such as a compiler output folder.
+ * <p>
+ * Only the paths are listed up front, the content of each file is read when it
+ * is asked for.
+ */
+public final class DirectoryClassSource implements ClassSource
+{
+    private final Path root;
+
+    private final Iterator<Path> files;
+
+    /**
+     * @param root
+     *            the directory to read
+     * @param includeResources
+     *            false to read class files only
+     */
+    public DirectoryClassSource(final Path root, final boolean includeResources) throws IOException
+    {
+        this.root = root;
+
+        final List<Path> found = new ArrayList<>();
+        Files.walkFileTree(root, new SimpleFileVisitor<Path>()
+        {
+            @Override
+            public FileVisitResult visitFile(final Path file, final BasicFileAttributes attrs)
+            {
+                if (attrs.isRegularFile() && (includeResources || file.getFileName().toString().endsWith(".class"))) {
+                    found.add(file);
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+        this.files = found.iterator();
+    }
+
+    @Override
+    public ClassEntry next() throws IOException
+    {
+        if (!files.hasNext()) {
+            return null;
+        }
+        final Path file = files.next();
+        return new ClassEntry(root.relativize(file).toString().replace(file.getFileSystem().getSeparator(), "/"), Files.readAllBytes(file));
+    }
+
+    @Override
+    public void close()
+    {
+        // nothing held open
+    }
+}
@@ -0,0 +1,63 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes the files to a directory.
+ * <p>
+ * When the directory is the one read from, only enhanced classes are written.
+ * Otherwise every file is written, so the directory ends up a complete copy.
+ */
+public final class DirectoryResultSink implements ResultSink
+{
+    private final Path root;
+
+    private final boolean inPlace;
+
+    /**
+     * @param root
+     *            the directory to write to
+     * @param inPlace
+     *            true if the files were read from the same directory
+     */
+    public DirectoryResultSink(final Path root, final boolean inPlace)
+    {
+        this.root = root;
+        this.inPlace = inPlace;
+    }
+
+    @Override
+    public void enhanced(final ClassEntry entry, final byte[] enhancedBytes) throws IOException
+    {
+        write(entry, enhancedBytes);
+    }
+
+    @Override
+    public void unchanged(final ClassEntry entry) throws IOException
+    {
+        if (!inPlace) {
+            write(entry, entry.getBytes());
+        }
+    }
+
+    @Override
+    public void failed(final ClassEntry entry, final Throwable error) throws IOException
+    {
+        unchanged(entry);
+    }
+
+    @Override
+    public void close()
+    {
+        // every file is written when received
+    }
+
+    private void write(final ClassEntry entry, final byte[] bytes) throws IOException
+    {
+        final Path file = root.resolve(entry.getName());
+        Files.createDirectories(file.getParent());
+        Files.write(file, bytes);
+    }
+}
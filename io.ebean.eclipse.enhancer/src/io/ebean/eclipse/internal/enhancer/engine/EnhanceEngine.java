@@ -0,0 +1,293 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.lang.instrument.IllegalClassFormatException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.ebean.enhance.agent.ClassBytesReader;
+import io.ebean.enhance.agent.MessageOutput;
+import io.ebean.enhance.agent.Transformer;
+import io.ebean.typequery.agent.CombinedTransform;
+import io.ebean.typequery.agent.CombinedTransform.Response;
+import io.ebean.typequery.agent.QueryBeanTransformer;
+
+/**
+ * Runs the entity bean and query bean transformers over class bytes, with no
+ * dependency on Eclipse.
+ * <p>
+ * Classes that mention nothing the transformers look for are filtered out by
+ * their {@link ClassHeader} first. An engine may be used by several threads at
+ * once, each thread gets its own pair of transformers as they are not thread
+ * safe.
+ */
+public final class EnhanceEngine implements AutoCloseable
+{
+    private final ClassBytesReader classBytesReader;
+
+    private final ClassLoader classLoader;
+
+    private final EnhanceOptions options;
+
+    private final MessageOutput log;
+
+    private final ThreadLocal<Agent> agents = new ThreadLocal<>();
+
+    /**
+     * Interfaces from the classpath known to carry (or not) a transactional
+     * annotation, the agent enhances their implementations.
+     */
+    private final ConcurrentMap<String, Boolean> transactionalInterfaces = new ConcurrentHashMap<>();
+
+    private final AtomicInteger filtered = new AtomicInteger();
+
+    /**
+     * @param classBytesReader
+     *            reads the classes the entity agent needs metadata of, usually
+     *            a {@link CachingClassBytesReader} over the class loader
+     * @param classLoader
+     *            the loader of the classpath, used by both agents
+     * @param options
+     *            the agent settings
+     * @param log
+     *            receives the agent log messages
+     */
+    public EnhanceEngine(final ClassBytesReader classBytesReader, final ClassLoader classLoader, final EnhanceOptions options,
+            final MessageOutput log)
+    {
+        this.classBytesReader = classBytesReader;
+        this.classLoader = classLoader;
+        this.options = options;
+        this.log = log;
+    }
+
+    /**
+     * Return the versions of the entity and query bean agents, as far as their
+     * jars declare them.
+     */
+    public static String getAgentVersion()
+    {
+        return version(Transformer.class) + ' ' + version(QueryBeanTransformer.class);
+    }
+
+    private static String version(final Class<?> type)
+    {
+        final Package pkg = type.getPackage();
+        return (pkg == null) ? null : pkg.getImplementationVersion();
+    }
+
+    /**
+     * Enhance the given class bytes if needed.
+     *
+     * @throws IllegalArgumentException
+     *             if the bytes are not a class file
+     */
+    public Outcome process(final byte[] classBytes) throws IllegalClassFormatException
+    {
+        final ClassHeader header = ClassHeader.read(classBytes);
+        if (!isCandidate(header)) {
+            return new Outcome(header, false, null, Collections.<Throwable> emptyList());
+        }
+        return transform(header, classBytes);
+    }
+
+    /**
+     * Return true if either transformer could possibly enhance the class,
+     * counting the classes filtered out.
+     */
+    public boolean isCandidate(final ClassHeader header)
+    {
+        if (header.hasAnnotationMarker() || header.hasQueryBeanMarker()) {
+            return true;
+        }
+        for (final String interfaceName : header.getInterfaces()) {
+            if (isTransactionalInterface(interfaceName)) {
+                return true;
+            }
+        }
+        filtered.incrementAndGet();
+        return false;
+    }
+
+    /**
+     * Run the transformers on a class that passed
+     * {@link #isCandidate(ClassHeader)}.
+     */
+    public Outcome transform(final ClassHeader header, final byte[] classBytes) throws IllegalClassFormatException
+    {
+        final Agent agent = agent();
+        final String className = header.getClassName().replace('/', '.');
+        final Response response = agent.combined.transform(classLoader, className, null, null, classBytes);
+        return new Outcome(header, true, response.isEnhanced() ? response.getClassBytes() : null, agent.drainUnexpectedExceptions());
+    }
+
+    /**
+     * Return the number of classes filtered out by
+     * {@link #isCandidate(ClassHeader)}.
+     */
+    public int getFilteredCount()
+    {
+        return filtered.get();
+    }
+
+    /**
+     * Drop the transformers of the calling thread, other threads drop theirs
+     * when they end.
+     */
+    @Override
+    public void close()
+    {
+        agents.remove();
+    }
+
+    private boolean isTransactionalInterface(final String internalName)
+    {
+        if (internalName.startsWith("java/")) {
+            return false;
+        }
+
+        Boolean transactional = transactionalInterfaces.get(internalName);
+        if (transactional == null) {
+            transactional = readTransactionalInterface(internalName);
+            transactionalInterfaces.putIfAbsent(internalName, transactional);
+        }
+        return transactional;
+    }
+
+    private boolean readTransactionalInterface(final String internalName)
+    {
+        try {
+            final byte[] classBytes = classBytesReader.getClassBytes(internalName, classLoader);
+            if (classBytes == null) {
+                return false;
+            }
+
+            final ClassHeader header = ClassHeader.read(classBytes);
+            if (header.hasAnnotationMarker()) {
+                return true;
+            }
+            for (final String superInterface : header.getInterfaces()) {
+                if (isTransactionalInterface(superInterface)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        catch (final RuntimeException e) {
+            // let the agent decide
+            return true;
+        }
+    }
+
+    private Agent agent()
+    {
+        Agent agent = agents.get();
+        if (agent == null) {
+            agent = new Agent();
+            agents.set(agent);
+        }
+        return agent;
+    }
+
+    /**
+     * The result of enhancing one class.
+     */
+    public static final class Outcome
+    {
+        private final ClassHeader header;
+
+        private final boolean candidate;
+
+        private final byte[] enhancedBytes;
+
+        private final List<Throwable> errors;
+
+        private Outcome(final ClassHeader header, final boolean candidate, final byte[] enhancedBytes, final List<Throwable> errors)
+        {
+            this.header = header;
+            this.candidate = candidate;
+            this.enhancedBytes = enhancedBytes;
+            this.errors = errors;
+        }
+
+        public ClassHeader getHeader()
+        {
+            return header;
+        }
+
+        /**
+         * False if the class was filtered out without running the
+         * transformers.
+         */
+        public boolean isCandidate()
+        {
+            return candidate;
+        }
+
+        public boolean isEnhanced()
+        {
+            return enhancedBytes != null;
+        }
+
+        /**
+         * The enhanced class bytes, null if the class was not enhanced.
+         */
+        public byte[] getEnhancedBytes()
+        {
+            return enhancedBytes;
+        }
+
+        /**
+         * The unexpected exceptions reported by the transformers.
+         */
+        public List<Throwable> getErrors()
+        {
+            return errors;
+        }
+    }
+
+    /**
+     * The pair of transformers used by one thread.
+     */
+    private final class Agent
+    {
+        private final Transformer entityBeanTransformer;
+
+        private final CombinedTransform combined;
+
+        /**
+         * The transformers collect unexpected exceptions for their whole
+         * lifetime, so remember which ones have already been reported.
+         */
+        private final Set<Throwable> reported = Collections.newSetFromMap(new IdentityHashMap<Throwable, Boolean>());
+
+        private Agent()
+        {
+            final QueryBeanTransformer queryBeanTransformer = new QueryBeanTransformer(options.getQueryBeanArguments(), classLoader,
+                    options.getQueryBeanDomainPackages());
+            this.entityBeanTransformer = new Transformer(classBytesReader, options.getEntityArguments(),
+                    options.getEntityPackages());
+            entityBeanTransformer.setLogout(log);
+
+            this.combined = new CombinedTransform(entityBeanTransformer, queryBeanTransformer);
+        }
+
+        private List<Throwable> drainUnexpectedExceptions()
+        {
+            final List<Throwable> errors = new ArrayList<>();
+            for (final List<Throwable> list : entityBeanTransformer.getUnexpectedExceptions().values()) {
+                for (final Throwable t : list) {
+                    if (reported.add(t)) {
+                        errors.add(t);
+                    }
+                }
+            }
+            return errors;
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * The settings given to the enhancement agents.
+ */
+public final class EnhanceOptions
+{
+    private final int debugLevel;
+
+    private final Set<String> entityPackages;
+
+    private final Set<String> queryBeanDomainPackages;
+
+    private final Set<String> queryBeanPackages;
+
+    /**
+     * @param debugLevel
+     *            the agent debug level, 0 to 10
+     * @param entityPackages
+     *            the packages holding entities and transactional classes, null
+     *            for all
+     * @param queryBeanDomainPackages
+     *            the packages holding the entities query beans are generated
+     *            for, null to leave it to the agent
+     * @param queryBeanPackages
+     *            the packages of the classes using query beans, empty for all
+     */
+    public EnhanceOptions(final int debugLevel, final Set<String> entityPackages, final Set<String> queryBeanDomainPackages,
+            final Set<String> queryBeanPackages)
+    {
+        this.debugLevel = debugLevel;
+        this.entityPackages = (entityPackages == null) ? null : Collections.unmodifiableSet(new TreeSet<>(entityPackages));
+        this.queryBeanDomainPackages = (queryBeanDomainPackages == null) ? null
+                : Collections.unmodifiableSet(new TreeSet<>(queryBeanDomainPackages));
+        this.queryBeanPackages = Collections.unmodifiableSet(new TreeSet<>(queryBeanPackages));
+    }
+
+    public int getDebugLevel()
+    {
+        return debugLevel;
+    }
+
+    public Set<String> getEntityPackages()
+    {
+        return entityPackages;
+    }
+
+    public Set<String> getQueryBeanDomainPackages()
+    {
+        return queryBeanDomainPackages;
+    }
+
+    public Set<String> getQueryBeanPackages()
+    {
+        return queryBeanPackages;
+    }
+
+    /**
+     * The arguments of the entity bean transformer.
+     */
+    String getEntityArguments()
+    {
+        return "debug=" + debugLevel;
+    }
+
+    /**
+     * The arguments of the query bean transformer, restricting the classes
+     * enhanced as query bean callers when packages are given.
+     */
+    String getQueryBeanArguments()
+    {
+        final StringBuilder sb = new StringBuilder("debug=").append(debugLevel);
+        String separator = ";packages=";
+        for (final String pkg : queryBeanPackages) {
+            sb.append(separator).append(pkg);
+            separator = ",";
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString()
+    {
+        return getEntityArguments() + " entity" + entityPackages + " domain" + queryBeanDomainPackages + " querybean" + queryBeanPackages;
+    }
+}
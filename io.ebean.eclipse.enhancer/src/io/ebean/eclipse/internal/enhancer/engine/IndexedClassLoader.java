@@ -0,0 +1,135 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+
+/**
+ * A class loader finding its classes and resources through a
+ * {@link ClasspathIndex}, for the agents: the query bean transformer reads its
+ * manifests with it and both transformers resolve classes with it to compute
+ * stack map frames. A <code>URLClassLoader</code> would probe every jar for
+ * each of those lookups.
+ * <p>
+ * The index must stay open as long as the loader is used. A loader of the jars
+ * can be kept across builds while the classes of the folders change, see
+ * {@link #withFolders()}.
+ */
+public final class IndexedClassLoader extends ClassLoader
+{
+    static {
+        registerAsParallelCapable();
+    }
+
+    private final ClasspathIndex index;
+
+    private final boolean withFolders;
+
+    /**
+     * The loader of the classes found in jars, null if this loader defines
+     * them itself.
+     */
+    private final IndexedClassLoader jarLoader;
+
+    /**
+     * @param parent
+     *            the loader searched first, as for a <code>URLClassLoader</code>
+     *            the system class loader
+     * @param index
+     *            the index of the classpath
+     * @param withFolders
+     *            false to leave the folders of the classpath to another loader,
+     *            as their classes change with every build
+     */
+    public IndexedClassLoader(final ClassLoader parent, final ClasspathIndex index, final boolean withFolders)
+    {
+        this(parent, index, withFolders, null);
+    }
+
+    private IndexedClassLoader(final ClassLoader parent, final ClasspathIndex index, final boolean withFolders,
+            final IndexedClassLoader jarLoader)
+    {
+        super(parent);
+        this.index = index;
+        this.withFolders = withFolders;
+        this.jarLoader = jarLoader;
+    }
+
+    /**
+     * Return a loader over the whole classpath, in classpath order, that
+     * defines the classes of folders itself and leaves those of jars to this
+     * loader. It is meant to be dropped with the build, while this one keeps
+     * the jar classes it loaded.
+     */
+    public IndexedClassLoader withFolders()
+    {
+        return new IndexedClassLoader(getParent(), index, true, this);
+    }
+
+    @Override
+    protected Class<?> findClass(final String name) throws ClassNotFoundException
+    {
+        final ClasspathIndex.Resource resource = index.find(name.replace('.', '/') + ".class", withFolders);
+        if (resource == null) {
+            throw new ClassNotFoundException(name);
+        }
+        if ((jarLoader != null) && !resource.isFile()) {
+            return jarLoader.loadClass(name);
+        }
+
+        final byte[] bytes;
+        try (InputStream in = resource.open()) {
+            bytes = read(in);
+        }
+        catch (final IOException e) {
+            throw new ClassNotFoundException(name, e);
+        }
+
+        final int dot = name.lastIndexOf('.');
+        if (dot > 0) {
+            final String packageName = name.substring(0, dot);
+            if (getPackage(packageName) == null) {
+                try {
+                    definePackage(packageName, null, null, null, null, null, null, null);
+                }
+                catch (final IllegalArgumentException e) {
+                    // defined meanwhile by another thread
+                }
+            }
+        }
+        return defineClass(name, bytes, 0, bytes.length);
+    }
+
+    @Override
+    protected URL findResource(final String name)
+    {
+        final ClasspathIndex.Resource resource = index.find(name, withFolders);
+        return (resource == null) ? null : resource.toUrl();
+    }
+
+    @Override
+    protected Enumeration<URL> findResources(final String name)
+    {
+        final List<URL> urls = new ArrayList<>();
+        for (final ClasspathIndex.Resource resource : index.findAll(name, withFolders)) {
+            urls.add(resource.toUrl());
+        }
+        return Collections.enumeration(urls);
+    }
+
+    private static byte[] read(final InputStream is) throws IOException
+    {
+        final ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        final byte[] buf = new byte[4096];
+        int len;
+        while ((len = is.read(buf)) > -1) {
+            baos.write(buf, 0, len);
+        }
+        return baos.toByteArray();
+    }
+}
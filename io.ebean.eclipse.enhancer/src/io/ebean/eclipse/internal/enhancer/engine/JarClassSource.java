@@ -0,0 +1,48 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+/**
+ * Reads all entries of a jar file in order, streaming it.
+ */
+public final class JarClassSource implements ClassSource
+{
+    private final ZipInputStream in;
+
+    private final byte[] buffer = new byte[8192];
+
+    public JarClassSource(final Path jar) throws IOException
+    {
+        this.in = new ZipInputStream(new BufferedInputStream(Files.newInputStream(jar)));
+    }
+
+    @Override
+    public ClassEntry next() throws IOException
+    {
+        ZipEntry entry;
+        while ((entry = in.getNextEntry()) != null) {
+            if (entry.isDirectory()) {
+                continue;
+            }
+            final ByteArrayOutputStream content = new ByteArrayOutputStream((entry.getSize() > 0) ? (int) entry.getSize() : buffer.length);
+            int len;
+            while ((len = in.read(buffer)) > -1) {
+                content.write(buffer, 0, len);
+            }
+            return new ClassEntry(entry.getName(), content.toByteArray());
+        }
+        return null;
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        in.close();
+    }
+}
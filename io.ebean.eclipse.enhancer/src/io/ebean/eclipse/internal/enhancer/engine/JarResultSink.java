@@ -0,0 +1,52 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * Writes every file to a new jar, in the order received.
+ */
+public final class JarResultSink implements ResultSink
+{
+    private final ZipOutputStream out;
+
+    public JarResultSink(final Path jar) throws IOException
+    {
+        this.out = new ZipOutputStream(new BufferedOutputStream(Files.newOutputStream(jar)));
+    }
+
+    @Override
+    public void enhanced(final ClassEntry entry, final byte[] enhancedBytes) throws IOException
+    {
+        write(entry, enhancedBytes);
+    }
+
+    @Override
+    public void unchanged(final ClassEntry entry) throws IOException
+    {
+        write(entry, entry.getBytes());
+    }
+
+    @Override
+    public void failed(final ClassEntry entry, final Throwable error) throws IOException
+    {
+        write(entry, entry.getBytes());
+    }
+
+    @Override
+    public void close() throws IOException
+    {
+        out.close();
+    }
+
+    private void write(final ClassEntry entry, final byte[] bytes) throws IOException
+    {
+        out.putNextEntry(new ZipEntry(entry.getName()));
+        out.write(bytes);
+        out.closeEntry();
+    }
+}
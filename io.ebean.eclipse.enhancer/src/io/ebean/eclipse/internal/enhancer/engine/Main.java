@@ -0,0 +1,164 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+import io.ebean.enhance.agent.MessageOutput;
+
+/**
+ * Enhances a class directory or jar from the command line, the same way the
+ * builder enhances a project:
+ *
+ * <pre>
+ * java -cp &lt;plugin jar&gt;:&lt;ebean-agent jar&gt; io.ebean.eclipse.internal.enhancer.engine.Main
+ *     [-cp classpath] [-threads n] [-debug n]
+ *     [-entity-packages a,b] [-querybean-packages a,b]
+ *     &lt;input directory or jar&gt; [output directory or jar]
+ * </pre>
+ *
+ * The classpath must hold the libraries the input uses (ebean itself
+ * included), the input is added to it. Without an output the input is
+ * enhanced in place.
+ */
+public final class Main
+{
+    private static final MessageOutput OUT = new MessageOutput()
+    {
+        @Override
+        public void println(final String msg)
+        {
+            System.out.println(msg);
+        }
+    };
+
+    private Main()
+    {
+    }
+
+    public static void main(final String[] args) throws Exception
+    {
+        final List<URL> classpath = new ArrayList<>();
+        int threads = Runtime.getRuntime().availableProcessors();
+        int debug = 0;
+        Set<String> entityPackages = null;
+        final Set<String> queryBeanPackages = new TreeSet<>();
+        final List<String> files = new ArrayList<>();
+
+        for (int i = 0; i < args.length; i++) {
+            final String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(arg);
+                continue;
+            }
+            if (i + 1 == args.length) {
+                usage("missing value of " + arg);
+                return;
+            }
+            final String value = args[++i];
+            switch (arg)
+            {
+            case "-cp":
+                for (final String path : value.split(File.pathSeparator)) {
+                    if (!path.isEmpty()) {
+                        classpath.add(new File(path).toURI().toURL());
+                    }
+                }
+                break;
+            case "-threads":
+                threads = Math.max(1, Integer.parseInt(value));
+                break;
+            case "-debug":
+                debug = Integer.parseInt(value);
+                break;
+            case "-entity-packages":
+                entityPackages = new TreeSet<>();
+                PackageNames.parse(value, entityPackages);
+                break;
+            case "-querybean-packages":
+                PackageNames.parse(value, queryBeanPackages);
+                break;
+            default:
+                usage("unknown option " + arg);
+                return;
+            }
+        }
+        if (files.isEmpty() || (files.size() > 2)) {
+            usage(null);
+            return;
+        }
+
+        final Path input = Paths.get(files.get(0));
+        final Path output = (files.size() == 2) ? Paths.get(files.get(1)) : input;
+        classpath.add(input.toUri().toURL());
+
+        final URL[] urls = classpath.toArray(new URL[classpath.size()]);
+        final EnhanceOptions options = new EnhanceOptions(debug, entityPackages, entityPackages, queryBeanPackages);
+
+        final long start = System.currentTimeMillis();
+        final BatchEnhancer batch;
+        // a jar is written next to the output and moved there once the input is closed
+        Path temp = null;
+        try {
+            try (ClasspathIndex index = ClasspathIndex.open(urls, null);
+                    EnhanceEngine engine = new EnhanceEngine(new CachingClassBytesReader(ClassLoader.getSystemClassLoader(), index,
+                            new ClassMetaCache()), new IndexedClassLoader(ClassLoader.getSystemClassLoader(), index, true), options, OUT)) {
+                batch = new BatchEnhancer(engine, threads, OUT);
+                if (Files.isDirectory(input)) {
+                    enhanceDirectory(batch, input, output);
+                } else {
+                    final Path absolute = output.toAbsolutePath();
+                    temp = Files.createTempFile(absolute.getParent(), absolute.getFileName().toString(), ".tmp");
+                    enhanceJar(batch, input, temp);
+                }
+            }
+            if (temp != null) {
+                Files.move(temp, output.toAbsolutePath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+        finally {
+            if (temp != null) {
+                Files.deleteIfExists(temp);
+            }
+        }
+
+        OUT.println("Enhanced " + batch.getEnhancedCount() + " classes, " + batch.getUnchangedCount() + " unchanged, "
+                + batch.getFailedCount() + " failed in " + (System.currentTimeMillis() - start) + " ms");
+        if (batch.getFailedCount() > 0) {
+            System.exit(1);
+        }
+    }
+
+    private static void enhanceDirectory(final BatchEnhancer batch, final Path input, final Path output) throws IOException, InterruptedException
+    {
+        final boolean inPlace = Files.isSameFile(input, Files.createDirectories(output));
+        try (ClassSource source = new DirectoryClassSource(input, !inPlace); ResultSink sink = new DirectoryResultSink(output, inPlace)) {
+            batch.run(source, sink);
+        }
+    }
+
+    private static void enhanceJar(final BatchEnhancer batch, final Path input, final Path output) throws IOException, InterruptedException
+    {
+        try (ClassSource source = new JarClassSource(input); ResultSink sink = new JarResultSink(output)) {
+            batch.run(source, sink);
+        }
+    }
+
+    private static void usage(final String error)
+    {
+        if (error != null) {
+            System.err.println(error);
+        }
+        System.err.println("usage: Main [-cp classpath] [-threads n] [-debug n] [-entity-packages a,b] [-querybean-packages a,b]"
+                + " <input directory or jar> [output directory or jar]");
+        System.exit(2);
+    }
+}
@@ -0,0 +1,51 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Parses package lists as written in <code>META-INF/ebean.mf</code>, like
+ * <code>com.acme.domain.*, com.acme.service</code>.
+ * <p>
+ * Packages are separated by commas, semicolons or white space, trailing
+ * wildcards and dots are dropped and <code>none</code> stands for no package.
+ */
+public final class PackageNames
+{
+    private PackageNames()
+    {
+    }
+
+    /**
+     * Add the packages of the given list, doing nothing for null.
+     */
+    public static void parse(final String value, final Set<String> packages)
+    {
+        if (value == null) {
+            return;
+        }
+        final List<String> parsed = new ArrayList<>();
+        for (String pkg : value.split(",|;|\\s")) {
+            pkg = pkg.trim();
+            while (pkg.endsWith("*") || pkg.endsWith(".")) {
+                pkg = pkg.substring(0, pkg.length() - 1);
+            }
+            if (!pkg.isEmpty() && !"none".equalsIgnoreCase(pkg)) {
+                parsed.add(pkg);
+            }
+        }
+        packages.addAll(parsed);
+    }
+
+    /**
+     * Replace the packages by those of the given list, keeping them for null.
+     */
+    public static void override(final String value, final Set<String> packages)
+    {
+        if (value != null) {
+            packages.clear();
+            parse(value, packages);
+        }
+    }
+}
@@ -0,0 +1,228 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Processes inputs on a bounded pool of worker threads.
+ * <p>
+ * Inputs are pulled from the source as workers become free, so a source can
+ * stream them. Every result is handed back to the calling thread in input
+ * order, so writing results needs no synchronization and keeps the order of
+ * the source (as jar files need).
+ */
+public final class ParallelRunner
+{
+    private final int parallelism;
+
+    public ParallelRunner(final int parallelism)
+    {
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * Process all inputs of the source, completing the results on the calling
+     * thread in input order.
+     *
+     * @throws CancellationException
+     *             if the task reports being canceled, results not yet
+     *             completed are dropped
+     */
+    public <T, R> void run(final Source<T> source, final Task<T, R> task) throws IOException, InterruptedException
+    {
+        final ExecutorService executor = Executors.newFixedThreadPool(parallelism, new WorkerThreadFactory());
+        final Queue<Future<Done<T, R>>> running = new ArrayDeque<>();
+
+        // limit the results waiting to be completed, they hold the class bytes
+        final int window = parallelism * 2;
+
+        Throwable failure = null;
+        try {
+            boolean exhausted = false;
+            while (!exhausted || !running.isEmpty()) {
+                if (task.isCanceled()) {
+                    throw new CancellationException();
+                }
+                while (!exhausted && (running.size() < window)) {
+                    final T input = source.next();
+                    if (input == null) {
+                        exhausted = true;
+                    } else {
+                        running.add(executor.submit(new Callable<Done<T, R>>()
+                        {
+                            @Override
+                            public Done<T, R> call()
+                            {
+                                try {
+                                    return new Done<T, R>(input, task.process(input), null);
+                                }
+                                catch (final Exception e) {
+                                    return new Done<T, R>(input, null, e);
+                                }
+                            }
+                        }));
+                    }
+                }
+                if (running.isEmpty()) {
+                    break;
+                }
+
+                final Done<T, R> done;
+                try {
+                    done = running.remove().get();
+                }
+                catch (final ExecutionException e) {
+                    // errors other than exceptions, like OutOfMemoryError
+                    throw new IllegalStateException(e.getCause());
+                }
+                if (done.failure == null) {
+                    task.complete(done.input, done.result);
+                } else {
+                    task.failed(done.input, done.failure);
+                }
+            }
+        }
+        catch (final Throwable e) {
+            failure = e;
+            throw e;
+        }
+        finally {
+            stop(executor, failure);
+        }
+    }
+
+    /**
+     * Stop the workers and wait for the running ones to finish before the
+     * caller releases what they use, even when interrupted (the interrupt is
+     * kept for the caller).
+     *
+     * @throws IllegalStateException
+     *             if workers are still running after a minute, added to the
+     *             failure of the run instead if there is one
+     */
+    private static void stop(final ExecutorService executor, final Throwable failure)
+    {
+        executor.shutdownNow();
+
+        final long end = System.nanoTime() + TimeUnit.MINUTES.toNanos(1);
+        boolean interrupted = false;
+        boolean terminated = false;
+        while (!terminated) {
+            try {
+                terminated = executor.awaitTermination(Math.max(0, end - System.nanoTime()), TimeUnit.NANOSECONDS);
+                if (!terminated) {
+                    break;
+                }
+            }
+            catch (final InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+
+        if (!terminated) {
+            final IllegalStateException e = new IllegalStateException("Workers still running a minute after stopping them");
+            if (failure == null) {
+                throw e;
+            }
+            failure.addSuppressed(e);
+        }
+    }
+
+    /**
+     * Return a source of the elements of the given list.
+     */
+    public static <T> Source<T> of(final List<T> inputs)
+    {
+        return new Source<T>()
+        {
+            private int next;
+
+            @Override
+            public T next()
+            {
+                return (next < inputs.size()) ? inputs.get(next++) : null;
+            }
+        };
+    }
+
+    /**
+     * Supplies the inputs, on the calling thread.
+     */
+    public interface Source<T>
+    {
+        /**
+         * Return the next input, null when there are no more.
+         */
+        T next() throws IOException;
+    }
+
+    /**
+     * The work done per input.
+     */
+    public interface Task<T, R>
+    {
+        /**
+         * Process one input, called on a worker thread.
+         */
+        R process(T input) throws Exception;
+
+        /**
+         * Complete the result of an input, called on the calling thread.
+         */
+        void complete(T input, R result) throws IOException;
+
+        /**
+         * Report the exception processing an input failed with, called on the
+         * calling thread.
+         */
+        void failed(T input, Exception failure) throws IOException;
+
+        /**
+         * Return true to stop processing inputs.
+         */
+        boolean isCanceled();
+    }
+
+    private static final class Done<T, R>
+    {
+        private final T input;
+
+        private final R result;
+
+        private final Exception failure;
+
+        private Done(final T input, final R result, final Exception failure)
+        {
+            this.input = input;
+            this.result = result;
+            this.failure = failure;
+        }
+    }
+
+    private static final class WorkerThreadFactory implements ThreadFactory
+    {
+        private static final AtomicInteger COUNT = new AtomicInteger();
+
+        @Override
+        public Thread newThread(final Runnable r)
+        {
+            final Thread thread = new Thread(r, "Ebean Enhancer Worker-" + COUNT.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package io.ebean.eclipse.internal.enhancer.engine;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Receives the outcome of every file read from a {@link ClassSource}, always on
+ * the same thread.
+ */
+public interface ResultSink extends Closeable
+{
+    /**
+     * The class was enhanced into the given bytes.
+     */
+    void enhanced(ClassEntry entry, byte[] enhancedBytes) throws IOException;
+
+    /**
+     * The file needs no enhancement, or is not a class file.
+     */
+    void unchanged(ClassEntry entry) throws IOException;
+
+    /**
+     * Enhancing the class failed, it is kept as it was.
+     */
+    void failed(ClassEntry entry, Throwable error) throws IOException;
+}
@@ -1,9 +0,0 @@
-package io.ebean.eclipse.internal.enhancer.ui.preferences;
-
-/**
- * Constant definitions for plug-in preferences
- */
-public class PreferenceConstants {
-  public static final String P_PLUGIN_DEBUG_LEVEL = "pluginDebugLevelPreference";
-  public static final String P_ENHANCE_DEBUG_LEVEL = "enhanceDebugLevelPreference";
-}